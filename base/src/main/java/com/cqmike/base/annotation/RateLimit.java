@@ -0,0 +1,70 @@
+package com.cqmike.base.annotation;
+
+
+import com.cqmike.base.util.RateLimiter;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  分布式限流注解, 超过限制时抛出 BusinessException(429)
+ *  <p>redis 不可用时放行, 只记录日志</p>
+ * @author chenqi
+ * @version 1.0
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface RateLimit {
+
+    /**
+     *  限流的key 后缀
+     * @see RateLimit#keyPrefix()
+     * <p>key的生成方式支持spel表达式</p>
+     *  <code>
+     *      redisKey = keyPrefix + ":" + key;
+     *  </code>
+     * @return key
+     */
+    String key();
+
+    /**
+     *  限流的前缀
+     * <p>keyPrefix的生成方式支持spel表达式</p>
+     * @return keyPrefix
+     */
+    String keyPrefix() default "RATE_LIMIT";
+
+    /**
+     *  每个窗口允许的请求数
+     */
+    long limit();
+
+    /**
+     *  窗口大小  默认1秒
+     *  @see RateLimit#timeUnit() 单位
+     */
+    long window() default 1;
+
+    /**
+     *  窗口大小 单位  默认秒
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     *  限流算法  默认令牌桶
+     */
+    RateLimiter.Strategy strategy() default RateLimiter.Strategy.TOKEN_BUCKET;
+
+    /**
+     *  是否先经过本节点的令牌桶预检  默认开启
+     */
+    boolean localPreCheck() default true;
+
+    /**
+     *  被限流时的提示信息
+     */
+    String message() default "";
+
+}
@@ -0,0 +1,39 @@
+package com.cqmike.base.annotation;
+
+
+import java.lang.annotation.*;
+
+/**
+ *  redis 缓存删除注解, 与 {@link RedisCacheable} 使用相同的 key 规则
+ * @author chenqi
+ * @version 1.0
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface RedisCacheEvict {
+
+    /**
+     *  缓存的key 后缀
+     * <p>key的生成方式支持spel表达式</p>
+     *  <code>
+     *      redisKey = keyPrefix + ":" + key;
+     *  </code>
+     * @return key
+     */
+    String key();
+
+    /**
+     *  缓存的前缀
+     * <p>keyPrefix的生成方式支持spel表达式</p>
+     * @return keyPrefix
+     */
+    String keyPrefix() default "CACHE";
+
+    /**
+     *  是否在方法执行前删除  默认方法执行成功后删除
+     */
+    boolean beforeInvocation() default false;
+
+}
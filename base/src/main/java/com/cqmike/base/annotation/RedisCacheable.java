@@ -0,0 +1,67 @@
+package com.cqmike.base.annotation;
+
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  redis 读缓存注解, 缓存不存在时执行方法并写入缓存
+ *  <p>方法返回 null 时写入空值标记并使用较短的过期时间, 防止缓存穿透</p>
+ *  <p>过期时间增加随机抖动, 防止大量key同时过期造成缓存雪崩</p>
+ *  <p>同一节点上相同key的并发未命中只会执行一次方法</p>
+ * @author chenqi
+ * @version 1.0
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface RedisCacheable {
+
+    /**
+     *  缓存的key 后缀
+     * @see RedisCacheable#keyPrefix()
+     * <p>key的生成方式支持spel表达式</p>
+     *  <code>
+     *      redisKey = keyPrefix + ":" + key;
+     *  </code>
+     * @return key
+     */
+    String key();
+
+    /**
+     *  缓存的前缀
+     * <p>keyPrefix的生成方式支持spel表达式</p>
+     * @return keyPrefix
+     */
+    String keyPrefix() default "CACHE";
+
+    /**
+     *  过期时间  默认300秒
+     *  @see RedisCacheable#timeUnit() 单位
+     */
+    int expire() default 300;
+
+    /**
+     *  方法返回 null 时空值标记的过期时间  默认30秒, 小于等于0时不缓存 null
+     *  @see RedisCacheable#timeUnit() 单位
+     */
+    int nullExpire() default 30;
+
+    /**
+     *  过期时间随机增加 0 ~ jitter% , 默认10
+     */
+    int jitter() default 10;
+
+    /**
+     *  过期时间 单位  默认秒
+     * @return
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     *  相同key并发未命中时, 等待其他线程加载的最长时间(毫秒)  默认5000, 超时后直接执行方法
+     */
+    long waitTimeout() default 5000;
+
+}
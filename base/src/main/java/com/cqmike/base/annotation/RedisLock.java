@@ -37,6 +37,7 @@ public @interface RedisLock {
 
     /**
         过期时间  默认5秒
+        <p>按毫秒精度生效, 可配合 {@link TimeUnit#MILLISECONDS} 设置小于1秒的过期时间</p>
        @see RedisLock#timeUnit() 单位
       */
     int expire() default 5;
@@ -54,4 +55,46 @@ public @interface RedisLock {
      */
     TimeUnit timeUnit() default TimeUnit.SECONDS;
 
+    /**
+     *  是否使用可重入锁 默认否
+     * <p>同一个线程嵌套调用相同key的方法时不会阻塞自己, 与非重入锁的数据结构不同, 同一个key需要统一使用</p>
+     * @see com.cqmike.base.util.RedisReentrantLock
+     * @return
+     */
+    boolean reentrant() default false;
+
+    /**
+     *  锁的模式 默认互斥锁
+     * <p>READ/WRITE 使用同一个key的读写锁, 读锁共享 写锁独占, 均可重入; SEMAPHORE 为信号量, 最多 permits 个线程同时执行</p>
+     * @see com.cqmike.base.util.RedisReadWriteLock
+     * @see com.cqmike.base.util.RedisSemaphore
+     * @return
+     */
+    Mode mode() default Mode.EXCLUSIVE;
+
+    /**
+     *  信号量的总许可数 默认1 仅 SEMAPHORE 模式生效
+     * @return
+     */
+    int permits() default 1;
+
+    enum Mode {
+        /**
+         * 互斥锁
+         */
+        EXCLUSIVE,
+        /**
+         * 读锁
+         */
+        READ,
+        /**
+         * 写锁
+         */
+        WRITE,
+        /**
+         * 信号量
+         */
+        SEMAPHORE
+    }
+
 }
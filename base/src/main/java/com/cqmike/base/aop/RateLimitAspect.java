@@ -0,0 +1,66 @@
+package com.cqmike.base.aop;
+
+import cn.hutool.core.util.StrUtil;
+import com.cqmike.base.annotation.RateLimit;
+import com.cqmike.base.exception.BusinessException;
+import com.cqmike.base.exception.CommonEnum;
+import com.cqmike.base.util.RateLimiter;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 分布式限流 切面处理类
+ *
+ * @author chen qi
+ * @date 2020-12-25 10:10
+ **/
+@Aspect
+@Component
+public class RateLimitAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitAspect.class);
+
+    private RateLimiter rateLimiter;
+
+    @Autowired(required = false)
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    private final SpELKeyResolver keyResolver = new SpELKeyResolver();
+
+    @Around("@annotation(com.cqmike.base.annotation.RateLimit)")
+    public Object aroundRateLimit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (rateLimiter == null) {
+            return joinPoint.proceed();
+        }
+        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
+        final RateLimit annotation = methodSignature.getMethod().getAnnotation(RateLimit.class);
+        final String key = keyResolver.getRealForSpELKey(joinPoint, annotation.keyPrefix()) + StrUtil.COLON
+                + keyResolver.getRealForSpELKey(joinPoint, annotation.key());
+
+        boolean allowed;
+        try {
+            allowed = rateLimiter.tryAcquire(key, annotation.strategy(), annotation.limit(), annotation.window(),
+                    annotation.timeUnit(), 1, annotation.localPreCheck());
+        } catch (Exception e) {
+            // redis 不可用时放行
+            log.warn("限流判断失败, 放行, key: {}", key, e);
+            allowed = true;
+        }
+        if (!allowed) {
+            log.debug("请求被限流, key: {}", key);
+            if (StrUtil.isNotEmpty(annotation.message())) {
+                throw new BusinessException(CommonEnum.TOO_MANY_REQUESTS.getResultCode(), annotation.message());
+            }
+            throw new BusinessException(CommonEnum.TOO_MANY_REQUESTS);
+        }
+        return joinPoint.proceed();
+    }
+}
@@ -0,0 +1,221 @@
+package com.cqmike.base.aop;
+
+import cn.hutool.core.util.StrUtil;
+import com.cqmike.base.annotation.RedisCacheEvict;
+import com.cqmike.base.annotation.RedisCacheable;
+import com.cqmike.base.util.RedisClient;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * redis 读缓存 切面处理类
+ *
+ * @author chen qi
+ * @date 2020-12-20 15:10
+ **/
+@Aspect
+@Component
+public class RedisCacheAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCacheAspect.class);
+
+    /**
+     * 方法返回 null 时写入的空值标记
+     */
+    private static final String NULL_VALUE = "@@NULL@@";
+
+    /**
+     * 缓存未命中或缓存值无法反序列化
+     */
+    private static final Object MISS = new Object();
+
+    /**
+     * 当前线程正在加载的key, 加载过程中递归调用相同key时直接执行方法, 不等待自己的加载结果
+     */
+    private static final ThreadLocal<Set<String>> LOADING_KEYS = ThreadLocal.withInitial(HashSet::new);
+
+    private RedisClient redisClient;
+
+    @Autowired(required = false)
+    public void setRedisClient(RedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    private final SpELKeyResolver keyResolver = new SpELKeyResolver();
+
+    /**
+     * 正在加载的key, 同一节点上相同key的并发未命中共用一次加载
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    @Around("@annotation(com.cqmike.base.annotation.RedisCacheable)")
+    public Object aroundCacheable(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (redisClient == null) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        final RedisCacheable annotation = method.getAnnotation(RedisCacheable.class);
+        final String cacheKey = keyResolver.getRealForSpELKey(joinPoint, annotation.keyPrefix()) + StrUtil.COLON
+                + keyResolver.getRealForSpELKey(joinPoint, annotation.key());
+        final TypeReference<Object> type = typeOf(method.getGenericReturnType());
+
+        Object cached = readCache(cacheKey, type);
+        if (cached != MISS) {
+            return cached;
+        }
+
+        Set<String> loadingKeys = LOADING_KEYS.get();
+        if (loadingKeys.contains(cacheKey)) {
+            return joinPoint.proceed();
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(cacheKey, future);
+        if (existing != null) {
+            return await(joinPoint, cacheKey, existing, annotation.waitTimeout());
+        }
+        loadingKeys.add(cacheKey);
+        try {
+            // 等待期间其他线程可能已经写入缓存
+            cached = readCache(cacheKey, type);
+            Object result = cached != MISS ? cached : load(joinPoint, cacheKey, annotation);
+            future.complete(result);
+            return result;
+        } catch (Throwable throwable) {
+            future.completeExceptionally(throwable);
+            throw throwable;
+        } finally {
+            loadingKeys.remove(cacheKey);
+            loading.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 等待其他线程的加载结果, 超时后直接执行方法
+     */
+    private Object await(ProceedingJoinPoint joinPoint, String cacheKey, CompletableFuture<Object> existing,
+                         long waitTimeout) throws Throwable {
+        try {
+            return existing.get(waitTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            log.warn("等待缓存加载超时, 直接执行方法, key: {}, timeout: {}ms", cacheKey, waitTimeout);
+            return joinPoint.proceed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return joinPoint.proceed();
+        }
+    }
+
+    @Around("@annotation(com.cqmike.base.annotation.RedisCacheEvict)")
+    public Object aroundCacheEvict(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (redisClient == null) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        final RedisCacheEvict annotation = method.getAnnotation(RedisCacheEvict.class);
+        final String cacheKey = keyResolver.getRealForSpELKey(joinPoint, annotation.keyPrefix()) + StrUtil.COLON
+                + keyResolver.getRealForSpELKey(joinPoint, annotation.key());
+        if (annotation.beforeInvocation()) {
+            evict(cacheKey);
+        }
+        Object proceed = joinPoint.proceed();
+        if (!annotation.beforeInvocation()) {
+            evict(cacheKey);
+        }
+        return proceed;
+    }
+
+    private Object load(ProceedingJoinPoint joinPoint, String cacheKey, RedisCacheable annotation) throws Throwable {
+        Object result = joinPoint.proceed();
+        long expire = annotation.timeUnit().toSeconds(result == null ? annotation.nullExpire() : annotation.expire());
+        if (result == null && annotation.nullExpire() <= 0) {
+            return null;
+        }
+        if (annotation.jitter() > 0) {
+            expire += ThreadLocalRandom.current().nextLong(expire * annotation.jitter() / 100 + 1);
+        }
+        try {
+            redisClient.setex(cacheKey, result == null ? NULL_VALUE : result, (int) Math.max(expire, 1));
+        } catch (Exception e) {
+            log.warn("写入缓存失败, key: {}", cacheKey, e);
+        }
+        return result;
+    }
+
+    /**
+     * @return 缓存的值, 未命中或读取失败时返回 {@link #MISS}; 缓存值无法转换为返回类型 (例如类结构变更) 时删除缓存
+     */
+    private Object readCache(String cacheKey, TypeReference<Object> type) {
+        Object cached;
+        try {
+            cached = redisClient.get(cacheKey, Object.class);
+        } catch (SerializationException e) {
+            // 缓存值中的类型已不存在
+            log.warn("缓存值无法反序列化, 删除缓存, key: {}", cacheKey, e);
+            evict(cacheKey);
+            return MISS;
+        } catch (Exception e) {
+            // redis 不可用时直接执行方法
+            log.warn("读取缓存失败, key: {}", cacheKey, e);
+            return MISS;
+        }
+        if (cached == null) {
+            return MISS;
+        }
+        try {
+            return fromCache(cached, type);
+        } catch (Exception e) {
+            log.warn("缓存值无法转换为返回类型, 删除缓存, key: {}", cacheKey, e);
+            evict(cacheKey);
+            return MISS;
+        }
+    }
+
+    private void evict(String cacheKey) {
+        try {
+            redisClient.del(cacheKey);
+        } catch (Exception e) {
+            log.error("删除缓存失败, key: {}", cacheKey, e);
+        }
+    }
+
+    private static Object fromCache(Object cached, TypeReference<Object> type) {
+        if (NULL_VALUE.equals(cached)) {
+            return null;
+        }
+        return RedisClient.Jackson2JsonRedisSerializer.deserialize(cached, type);
+    }
+
+    /**
+     * 方法的泛型返回类型
+     */
+    private static TypeReference<Object> typeOf(Type type) {
+        return new TypeReference<Object>() {
+            @Override
+            public Type getType() {
+                return type;
+            }
+        };
+    }
+}
@@ -1,11 +1,14 @@
 package com.cqmike.base.aop;
 
-import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.StrUtil;
 import com.cqmike.base.annotation.RedisLock;
 import com.cqmike.base.generator.SnowflakeIdWorker;
 import com.cqmike.base.util.RedisClient;
 import com.cqmike.base.util.RedisLockUtil;
+import com.cqmike.base.util.RedisLockWatchdog;
+import com.cqmike.base.util.RedisReadWriteLock;
+import com.cqmike.base.util.RedisReentrantLock;
+import com.cqmike.base.util.RedisSemaphore;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -13,16 +16,12 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.Expression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  * redis分布式锁 切面处理类
@@ -46,6 +45,25 @@ public class RedisLockAspect {
         this.redisClient = redisClient;
     }
 
+    private RedisLockWatchdog watchdog;
+
+    @Autowired(required = false)
+    public void setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * 租期小于两个续期间隔时看门狗无法保证在过期前续期, 这类锁不续期, 在租期后自动过期
+     */
+    private RedisLockWatchdog watchdogFor(String lockKey, long leaseMillis) {
+        if (watchdog != null && leaseMillis < 2 * watchdog.getTickMillis()) {
+            log.warn("锁 {} 的租期 {}ms 小于两个续期间隔 {}ms, 不续期; 需要续期时请加长 expire 或调小 redis.client.lock.watchdog-tick",
+                    lockKey, leaseMillis, 2 * watchdog.getTickMillis());
+            return null;
+        }
+        return watchdog;
+    }
+
     @Around("@annotation(com.cqmike.base.annotation.RedisLock)")
     public Object aroundCache(ProceedingJoinPoint joinPoint) {
         MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
@@ -56,20 +74,35 @@ public class RedisLockAspect {
         final String key = getRealForSpELKey(joinPoint, annotation.key());
         String lockKey = keyPrefix + StrUtil.COLON + key;
 
-        String value = snowflakeIdWorker.getId().toString();
-
-        // 获取不到锁 跳过此执行方法
-        int expire = annotation.expire();
-        final TimeUnit timeUnit = annotation.timeUnit();
-        if (timeUnit != TimeUnit.SECONDS) {
-            expire = (int) timeUnit.toSeconds(expire);
+        // 租期按毫秒计算, 支持小于1秒的过期时间
+        final long leaseMillis = RedisLockUtil.toLeaseMillis(annotation.expire(), annotation.timeUnit());
+        final RedisLockWatchdog renewal = watchdogFor(lockKey, leaseMillis);
+        switch (annotation.mode()) {
+            case READ:
+                return aroundLock(joinPoint, new RedisReadWriteLock(redisClient, renewal, lockKey, leaseMillis).readLock(),
+                        lockKey, annotation.waitTime());
+            case WRITE:
+                return aroundLock(joinPoint, new RedisReadWriteLock(redisClient, renewal, lockKey, leaseMillis).writeLock(),
+                        lockKey, annotation.waitTime());
+            case SEMAPHORE:
+                return aroundSemaphore(joinPoint, new RedisSemaphore(redisClient, renewal, lockKey, annotation.permits(), leaseMillis),
+                        annotation.waitTime());
+            default:
+                if (annotation.reentrant()) {
+                    return aroundLock(joinPoint, new RedisReentrantLock(redisClient, renewal, lockKey, leaseMillis),
+                            lockKey, annotation.waitTime());
+                }
+                break;
         }
 
+        String value = snowflakeIdWorker.getId().toString();
+
         final String format = StrUtil.format("线程id: {}, 类: {}, 方法: {}", Thread.currentThread().getId(),
                 joinPoint.getTarget().getClass().getSimpleName(), methodSignature.getMethod().getName());
-        // 尝试获取分布式锁  根据等待时间去重试获取锁
+        // 尝试获取分布式锁  根据等待时间去重试获取锁, 获取不到锁 跳过此执行方法
         try {
-            if (!RedisLockUtil.lockWithWaitTime(redisClient, lockKey, value, expire, annotation.waitTime())) {
+            if (!RedisLockUtil.lockWithWaitTime(redisClient, lockKey, value, leaseMillis, TimeUnit.MILLISECONDS,
+                    annotation.waitTime())) {
                 return null;
             }
         } catch (Exception e) {
@@ -82,14 +115,14 @@ public class RedisLockAspect {
             return null;
         }
 
+        // 交给共享的看门狗续期
+        RedisLockWatchdog.Lease lease = null;
         try {
 
             log.info("{} ,获取到分布式锁: key: {}, value: {}", format, lockKey, value);
-            LockExpandDaemonRunnable runnable = new LockExpandDaemonRunnable(redisClient, lockKey, value, expire);
-            // 开启redis 过期时间 续期守护线程
-            Thread thread = new Thread(runnable);
-            thread.setDaemon(Boolean.TRUE);
-            thread.start();
+            if (renewal != null) {
+                lease = renewal.watch(lockKey, value, leaseMillis);
+            }
 
             Object proceed = null;
             try {
@@ -97,11 +130,12 @@ public class RedisLockAspect {
             } catch (Throwable throwable) {
                 log.error("{}, 分布式锁方法执行异常", format, throwable);
             }
-            runnable.stop();
-            thread.interrupt();
 
             return proceed;
         } finally {
+            if (lease != null) {
+                lease.cancel();
+            }
             if (!RedisLockUtil.releaseDistributedLock(redisClient, lockKey, value)) {
                 log.error("{}, 分布式锁释放失败, key: {}, value: {}", format, lockKey, value);
             } else {
@@ -113,47 +147,94 @@ public class RedisLockAspect {
     }
 
     /**
-     * 用于SpEL表达式解析.
-     */
-    private final SpelExpressionParser parser = new SpelExpressionParser();
-    /**
-     * 用于获取方法参数定义名字.
+     * 可重入锁与读写锁 持有者为节点id加线程id, 同一个线程嵌套获取时重入次数加一
      */
-    private final DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
-
-    private static final String SPEL_FLAG = "#";
+    private Object aroundLock(ProceedingJoinPoint joinPoint, Lock lock, String lockKey, long waitTime) {
+        final String format = format(joinPoint);
+        try {
+            if (!lock.tryLock(waitTime, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("{}, 尝试获取分布式锁被中断, key: {}", format, lockKey);
+            return null;
+        } catch (Exception e) {
+            log.error("{}, 尝试获取分布式锁异常, key: {}", format, lockKey, e);
+            return null;
+        }
 
-    private String getRealForSpELKey(ProceedingJoinPoint joinPoint, String key) {
-        return key.contains(SPEL_FLAG) ? this.generateKeyBySpEL(key, joinPoint) : key;
+        try {
+            log.info("{} ,获取到分布式锁: key: {}", format, lockKey);
+            return proceed(joinPoint, format);
+        } finally {
+            try {
+                lock.unlock();
+                log.info("{}, 分布式锁释放成功, key: {}", format, lockKey);
+            } catch (Exception e) {
+                log.error("{}, 分布式锁释放失败, key: {}", format, lockKey, e);
+            }
+        }
     }
 
     /**
-     * 获取spel表达式的值
-     *
-     * @param spELString spel表达式
-     * @param joinPoint  切入点
-     * @return
+     * 信号量 获取一个许可
      */
-    private String generateKeyBySpEL(String spELString, ProceedingJoinPoint joinPoint) {
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        String[] paramNames = nameDiscoverer.getParameterNames(methodSignature.getMethod());
-        if (ArrayUtil.isEmpty(paramNames)) {
-            return spELString;
+    private Object aroundSemaphore(ProceedingJoinPoint joinPoint, RedisSemaphore semaphore, long waitTime) {
+        final String format = format(joinPoint);
+        final String permitId;
+        try {
+            permitId = semaphore.tryAcquire(1, waitTime, TimeUnit.MILLISECONDS);
+            if (permitId == null) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("{}, 尝试获取信号量被中断, key: {}", format, semaphore.getKey());
+            return null;
+        } catch (Exception e) {
+            log.error("{}, 尝试获取信号量异常, key: {}", format, semaphore.getKey(), e);
+            return null;
         }
-        Expression expression = parser.parseExpression(spELString);
-        EvaluationContext context = new StandardEvaluationContext();
-        Object[] args = joinPoint.getArgs();
-        for (int i = 0; i < args.length; i++) {
 
-            context.setVariable(paramNames[i], args[i]);
+        try {
+            log.info("{} ,获取到信号量: key: {}, permitId: {}", format, semaphore.getKey(), permitId);
+            return proceed(joinPoint, format);
+        } finally {
+            try {
+                if (!semaphore.release(permitId)) {
+                    log.error("{}, 信号量许可已过期, key: {}, permitId: {}", format, semaphore.getKey(), permitId);
+                }
+            } catch (Exception e) {
+                log.error("{}, 信号量释放失败, key: {}, permitId: {}", format, semaphore.getKey(), permitId, e);
+            }
         }
-        final Object value = expression.getValue(context);
-        if (value == null) {
-            return spELString;
+    }
+
+    private Object proceed(ProceedingJoinPoint joinPoint, String format) {
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable throwable) {
+            log.error("{}, 分布式锁方法执行异常", format, throwable);
+            return null;
         }
-        return value.toString();
     }
 
+    private static String format(ProceedingJoinPoint joinPoint) {
+        return StrUtil.format("线程id: {}, 类: {}, 方法: {}", Thread.currentThread().getId(),
+                joinPoint.getTarget().getClass().getSimpleName(), ((MethodSignature) joinPoint.getSignature()).getMethod().getName());
+    }
+
+    private final SpELKeyResolver keyResolver = new SpELKeyResolver();
+
+    private String getRealForSpELKey(ProceedingJoinPoint joinPoint, String key) {
+        return keyResolver.getRealForSpELKey(joinPoint, key);
+    }
+
+    /**
+     * 每个锁一个续期线程, 已由共享的 {@link RedisLockWatchdog} 替代
+     */
+    @Deprecated
     public static class LockExpandDaemonRunnable implements Runnable {
 
         private static final Logger log = LoggerFactory.getLogger(LockExpandDaemonRunnable.class);
@@ -0,0 +1,61 @@
+package com.cqmike.base.aop;
+
+import cn.hutool.core.util.ArrayUtil;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * 切面中 key 的 SpEL 表达式解析
+ *
+ * @author chen qi
+ * @date 2020-12-20 15:10
+ **/
+final class SpELKeyResolver {
+
+    /**
+     * 用于SpEL表达式解析.
+     */
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    /**
+     * 用于获取方法参数定义名字.
+     */
+    private final DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private static final String SPEL_FLAG = "#";
+
+    String getRealForSpELKey(ProceedingJoinPoint joinPoint, String key) {
+        return key.contains(SPEL_FLAG) ? this.generateKeyBySpEL(key, joinPoint) : key;
+    }
+
+    /**
+     * 获取spel表达式的值
+     *
+     * @param spELString spel表达式
+     * @param joinPoint  切入点
+     * @return
+     */
+    private String generateKeyBySpEL(String spELString, ProceedingJoinPoint joinPoint) {
+        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
+        String[] paramNames = nameDiscoverer.getParameterNames(methodSignature.getMethod());
+        if (ArrayUtil.isEmpty(paramNames)) {
+            return spELString;
+        }
+        Expression expression = parser.parseExpression(spELString);
+        EvaluationContext context = new StandardEvaluationContext();
+        Object[] args = joinPoint.getArgs();
+        for (int i = 0; i < args.length; i++) {
+
+            context.setVariable(paramNames[i], args[i]);
+        }
+        final Object value = expression.getValue(context);
+        if (value == null) {
+            return spELString;
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,365 @@
+package com.cqmike.base.config;
+
+import com.cqmike.base.util.RedisLockNotifier;
+import com.cqmike.base.util.RedisLockWatchdog;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * @program: common
+ * @description: RedisClient 扩展配置
+ * @author: chen qi
+ * @create: 2020-12-13 09:40
+ **/
+@ConfigurationProperties(prefix = "redis.client")
+public class RedisClientProperties {
+
+    /**
+     * value 序列化方式 默认json
+     */
+    private SerializerType serializer = SerializerType.JSON;
+
+    /**
+     * 本地近端缓存
+     */
+    private final NearCache nearCache = new NearCache();
+
+    /**
+     * 大value压缩
+     */
+    private final Compression compression = new Compression();
+
+    /**
+     * 热点key探测
+     */
+    private final HotKey hotKey = new HotKey();
+
+    /**
+     * micrometer 指标
+     */
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * 分布式锁
+     */
+    private final Lock lock = new Lock();
+
+    public SerializerType getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(SerializerType serializer) {
+        this.serializer = serializer;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public HotKey getHotKey() {
+        return hotKey;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Lock getLock() {
+        return lock;
+    }
+
+    public enum SerializerType {
+        /**
+         * json, 开启 default typing 写入类名
+         */
+        JSON,
+        /**
+         * smile 二进制, 不写入类名, 可读取旧的 json 数据
+         * <p>返回 Object 的接口只能读到 Map/List, 需要使用带类型参数的接口</p>
+         */
+        SMILE
+    }
+
+    public static class NearCache {
+
+        /**
+         * 是否开启本地近端缓存 默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本地缓存的最大条目数
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 本地缓存写入后的过期时间
+         */
+        private Duration expireAfterWrite = Duration.ofSeconds(60);
+
+        /**
+         * 需要本地缓存的key前缀, 为空时不缓存任何key
+         */
+        private List<String> keyPrefixes = new ArrayList<>();
+
+        /**
+         * 失效通知的 pub/sub 频道
+         */
+        private String channel = "near-cache:invalidate";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+
+        public List<String> getKeyPrefixes() {
+            return keyPrefixes;
+        }
+
+        public void setKeyPrefixes(List<String> keyPrefixes) {
+            this.keyPrefixes = keyPrefixes;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public void setChannel(String channel) {
+            this.channel = channel;
+        }
+    }
+
+    public static class Compression {
+
+        /**
+         * 是否开启压缩 默认关闭, 关闭时仍可读取已压缩的数据
+         */
+        private boolean enabled = false;
+
+        /**
+         * 压缩阈值(字节) 序列化后超过该大小才压缩
+         */
+        private int threshold = 4096;
+
+        /**
+         * Deflate 压缩级别 1~9
+         */
+        private int level = Deflater.BEST_SPEED;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(int threshold) {
+            this.threshold = threshold;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    public static class HotKey {
+
+        /**
+         * 是否开启热点key探测 默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 抽样率 每 sampleRate 次访问记录一次
+         */
+        private int sampleRate = 8;
+
+        /**
+         * 滑动窗口内的访问量阈值, 超过后视为热点key
+         */
+        private long threshold = 5000;
+
+        /**
+         * 滑动窗口大小
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        /**
+         * count-min sketch 每行的计数器数量
+         */
+        private int sketchWidth = 4096;
+
+        /**
+         * 最多记录的热点key数量
+         */
+        private int topK = 100;
+
+        /**
+         * 热点key本地缓存的过期时间
+         */
+        private Duration localTtl = Duration.ofSeconds(1);
+
+        /**
+         * 热点key本地缓存的最大条目数
+         */
+        private long localMaximumSize = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public long getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(long threshold) {
+            this.threshold = threshold;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getSketchWidth() {
+            return sketchWidth;
+        }
+
+        public void setSketchWidth(int sketchWidth) {
+            this.sketchWidth = sketchWidth;
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public Duration getLocalTtl() {
+            return localTtl;
+        }
+
+        public void setLocalTtl(Duration localTtl) {
+            this.localTtl = localTtl;
+        }
+
+        public long getLocalMaximumSize() {
+            return localMaximumSize;
+        }
+
+        public void setLocalMaximumSize(long localMaximumSize) {
+            this.localMaximumSize = localMaximumSize;
+        }
+    }
+
+    public static class Metrics {
+
+        /**
+         * 是否采集命令耗时、异常、数据大小及连接池指标 默认开启, 需要 micrometer
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Lock {
+
+        /**
+         * 是否通过 pub/sub 通知等待锁的线程 默认开启, 关闭时按退避间隔重试
+         */
+        private boolean notifyEnabled = true;
+
+        /**
+         * 锁释放通知的 channel 前缀
+         */
+        private String channelPrefix = RedisLockNotifier.DEFAULT_CHANNEL_PREFIX;
+
+        /**
+         * 续期看门狗的调度间隔 默认100毫秒, 租期需要不小于两个间隔才能保证在过期前续期
+         */
+        private Duration watchdogTick = Duration.ofMillis(RedisLockWatchdog.DEFAULT_TICK_MILLIS);
+
+        public boolean isNotifyEnabled() {
+            return notifyEnabled;
+        }
+
+        public void setNotifyEnabled(boolean notifyEnabled) {
+            this.notifyEnabled = notifyEnabled;
+        }
+
+        public String getChannelPrefix() {
+            return channelPrefix;
+        }
+
+        public void setChannelPrefix(String channelPrefix) {
+            this.channelPrefix = channelPrefix;
+        }
+
+        public Duration getWatchdogTick() {
+            return watchdogTick;
+        }
+
+        public void setWatchdogTick(Duration watchdogTick) {
+            this.watchdogTick = watchdogTick;
+        }
+    }
+}
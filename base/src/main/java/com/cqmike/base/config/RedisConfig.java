@@ -1,6 +1,20 @@
 package com.cqmike.base.config;
 
+import com.cqmike.base.util.CompressingRedisSerializer;
+import com.cqmike.base.util.HotKeyDetector;
+import com.cqmike.base.util.MeteredRedisTemplate;
+import com.cqmike.base.util.NearCache;
+import com.cqmike.base.util.RateLimiter;
+import com.cqmike.base.util.ReactiveRedisClient;
 import com.cqmike.base.util.RedisClient;
+import com.cqmike.base.util.RedisLockNotifier;
+import com.cqmike.base.util.RedisLockUtil;
+import com.cqmike.base.util.RedisLockWatchdog;
+import com.cqmike.base.util.RedisMetrics;
+import com.cqmike.base.util.RedisReadWriteLock;
+import com.cqmike.base.util.RedisReentrantLock;
+import com.cqmike.base.util.RedisSemaphore;
+import com.cqmike.base.util.SmileRedisSerializer;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
@@ -8,19 +22,34 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 /**
@@ -31,7 +60,7 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
  **/
 @Configuration
 @ConditionalOnClass({RedisOperations.class})
-@EnableConfigurationProperties(RedisProperties.class)
+@EnableConfigurationProperties({RedisProperties.class, RedisClientProperties.class})
 public class RedisConfig {
     private static final Logger log = LoggerFactory.getLogger(RedisConfig.class);
 
@@ -44,14 +73,70 @@ public class RedisConfig {
      * @return
      */
     @Bean("redisTemplate")
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       @Qualifier("redisValueSerializer") RedisSerializer<Object> valueSerializer,
+                                                       ObjectProvider<MeteredRedisTemplate.ConnectionInstrumenter> instrumenter) {
         log.info("redis初始化序列方式！");
-        // 配置 json 序列化器 - Jackson2JsonRedisSerializer
+        // 創建並配置自定義 RedisTemplateRedisOperator, 开启指标时使用 MeteredRedisTemplate
+        MeteredRedisTemplate.ConnectionInstrumenter metrics = instrumenter.getIfAvailable();
+        RedisTemplate<String, Object> template = metrics == null ? new RedisTemplate<>() : new MeteredRedisTemplate<>(metrics);
+        template.setConnectionFactory(redisConnectionFactory);
+        // 將 key 序列化成字符串
+        template.setKeySerializer(new StringRedisSerializer());
+        // 將 hash 的 key 序列化成字符串
+        template.setHashKeySerializer(new StringRedisSerializer());
+        // 將 value 序列化成 json
+        template.setValueSerializer(valueSerializer);
+        // 將 hash 的 value 序列化成 json
+        template.setHashValueSerializer(valueSerializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * value 序列化器, 由 redis.client.serializer 选择
+     * <p>smile 模式下仍可读取旧的 json 数据; 外层始终包装压缩, 关闭压缩时仍可读取已压缩的数据</p>
+     *
+     * @param properties 配置
+     * @return serializer
+     */
+    @Bean("redisValueSerializer")
+    public RedisSerializer<Object> redisValueSerializer(RedisClientProperties properties) {
+        log.info("redis value 序列化方式: {}, 压缩: {}", properties.getSerializer(), properties.getCompression().isEnabled());
+        RedisSerializer<Object> serializer = jsonSerializer();
+        if (properties.getSerializer() == RedisClientProperties.SerializerType.SMILE) {
+            serializer = new SmileRedisSerializer(smileObjectMapper(), serializer);
+        }
+        RedisClientProperties.Compression compression = properties.getCompression();
+        int threshold = compression.isEnabled() ? compression.getThreshold() : Integer.MAX_VALUE;
+        return new CompressingRedisSerializer(serializer, threshold, compression.getLevel());
+    }
+
+    /**
+     * 配置 json 序列化器 - Jackson2JsonRedisSerializer
+     */
+    static Jackson2JsonRedisSerializer<Object> jsonSerializer() {
         Jackson2JsonRedisSerializer<Object> jacksonSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
         objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
                 ObjectMapper.DefaultTyping.NON_FINAL);
+        configure(objectMapper);
+        jacksonSerializer.setObjectMapper(objectMapper);
+        return jacksonSerializer;
+    }
+
+    /**
+     * smile 不开启 default typing, 值中不写入类名
+     */
+    static ObjectMapper smileObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        configure(objectMapper);
+        return objectMapper;
+    }
+
+    private static void configure(ObjectMapper objectMapper) {
         // 解决jackson2无法反序列化LocalDateTime的问题
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         // 忽略空Bean转json的错误
@@ -59,25 +144,186 @@ public class RedisConfig {
         // 忽略未知属性，防止json字符串中存在，java对象中不存在对应属性的情况出现错误
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         objectMapper.registerModule(new JavaTimeModule());
-        jacksonSerializer.setObjectMapper(objectMapper);
-        // 創建並配置自定義 RedisTemplateRedisOperator
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(redisConnectionFactory);
-        // 將 key 序列化成字符串
-        template.setKeySerializer(new StringRedisSerializer());
-        // 將 hash 的 key 序列化成字符串
-        template.setHashKeySerializer(new StringRedisSerializer());
-        // 將 value 序列化成 json
-        template.setValueSerializer(jacksonSerializer);
-        // 將 hash 的 value 序列化成 json
-        template.setHashValueSerializer(jacksonSerializer);
-        template.afterPropertiesSet();
-        return template;
     }
+
     @Bean
-    public RedisClient redisClient(@Qualifier("redisTemplate") RedisTemplate redisTemplate) {
-        return new RedisClient(redisTemplate);
+    public RedisClient redisClient(@Qualifier("redisTemplate") RedisTemplate redisTemplate,
+                                   ObjectProvider<NearCache> nearCache,
+                                   ObjectProvider<HotKeyDetector> hotKeyDetector) {
+        RedisClient redisClient = new RedisClient(redisTemplate);
+        nearCache.ifAvailable(redisClient::setNearCache);
+        hotKeyDetector.ifAvailable(redisClient::setHotKeyDetector);
+        RedisLockUtil.registerScripts(redisClient);
+        RedisReentrantLock.registerScripts(redisClient);
+        RedisReadWriteLock.registerScripts(redisClient);
+        RedisSemaphore.registerScripts(redisClient);
+        return redisClient;
     }
 
-}
+    /**
+     * 分布式锁的共享续期线程, 调度间隔由 redis.client.lock.watchdog-tick 配置
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedisLockWatchdog redisLockWatchdog(RedisClient redisClient, RedisClientProperties properties) {
+        return new RedisLockWatchdog(redisClient, properties.getLock().getWatchdogTick().toMillis());
+    }
+
+    /**
+     * 分布式限流, 配合 @RateLimit 使用
+     */
+    @Bean
+    public RateLimiter rateLimiter(RedisClient redisClient) {
+        RateLimiter rateLimiter = new RateLimiter(redisClient);
+        rateLimiter.registerScripts();
+        return rateLimiter;
+    }
 
+    /**
+     * 热点key探测 redis.client.hot-key.enabled=true 时开启
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.client.hot-key", name = "enabled", havingValue = "true")
+    public HotKeyDetector hotKeyDetector(RedisClientProperties properties) {
+        RedisClientProperties.HotKey config = properties.getHotKey();
+        return new HotKeyDetector(config.getSketchWidth(), config.getSampleRate(), config.getThreshold(),
+                config.getWindow(), config.getTopK(), config.getLocalTtl(), config.getLocalMaximumSize());
+    }
+
+    /**
+     * 响应式 redisTemplate, 与 redisTemplate 共用 value 序列化器
+     * <p>方法名为 reactiveRedisTemplate, 替换默认的 ReactiveRedisTemplate&lt;Object, Object&gt;</p>
+     */
+    @Bean("reactiveRedisTemplate")
+    @ConditionalOnClass(name = "reactor.core.publisher.Flux")
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory reactiveRedisConnectionFactory,
+                                                                       @Qualifier("redisValueSerializer") RedisSerializer<Object> valueSerializer) {
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(valueSerializer)
+                .hashKey(new StringRedisSerializer())
+                .hashValue(valueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, serializationContext);
+    }
+
+    @Bean
+    @ConditionalOnClass(name = "reactor.core.publisher.Flux")
+    public ReactiveRedisClient reactiveRedisClient(@Qualifier("reactiveRedisTemplate") ReactiveRedisTemplate<String, Object> reactiveRedisTemplate,
+                                                   ObjectProvider<RedisClient> redisClient) {
+        return new ReactiveRedisClient(reactiveRedisTemplate, redisClient.getIfAvailable());
+    }
+
+    /**
+     * 启动完成后预加载已注册的 lua 脚本
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadScripts(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBeanProvider(RedisClient.class).ifAvailable(RedisClient::loadScripts);
+    }
+
+    /**
+     * 本地近端缓存 redis.client.near-cache.enabled=true 时开启
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.client.near-cache", name = "enabled", havingValue = "true")
+    public NearCache nearCache(@Qualifier("redisTemplate") RedisTemplate<String, Object> redisTemplate,
+                               RedisClientProperties properties) {
+        RedisClientProperties.NearCache config = properties.getNearCache();
+        return new NearCache(redisTemplate, config.getChannel(), config.getKeyPrefixes(),
+                config.getMaximumSize(), config.getExpireAfterWrite());
+    }
+
+    /**
+     * 分布式锁的释放通知 redis.client.lock.notify-enabled=false 时关闭
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.client.lock", name = "notify-enabled", havingValue = "true", matchIfMissing = true)
+    public RedisLockNotifier redisLockNotifier(RedisClientProperties properties) {
+        RedisLockNotifier notifier = new RedisLockNotifier(properties.getLock().getChannelPrefix());
+        RedisLockUtil.setNotifier(notifier);
+        return notifier;
+    }
+
+    /**
+     * 订阅锁的释放通知, 每个节点一个 pattern 订阅
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.client.lock", name = "notify-enabled", havingValue = "true", matchIfMissing = true)
+    public RedisMessageListenerContainer redisLockListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                    RedisLockNotifier redisLockNotifier) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(redisLockNotifier, new PatternTopic(redisLockNotifier.getPattern()));
+        return container;
+    }
+
+    /**
+     * 订阅近端缓存的失效通知
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.client.near-cache", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                    NearCache nearCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(nearCache, new ChannelTopic(nearCache.getChannel()));
+        return container;
+    }
+
+    /**
+     * actuator endpoint, 依赖为 optional, 使用方引入 actuator 时才加载
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    static class RedisEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnProperty(prefix = "redis.client.hot-key", name = "enabled", havingValue = "true")
+        public RedisHotKeyEndpoint redisHotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+            return new RedisHotKeyEndpoint(hotKeyDetector);
+        }
+    }
+
+    /**
+     * 命令耗时、异常、数据大小及连接池指标, 由 actuator 绑定到 MeterRegistry
+     * <p>micrometer 为 optional 依赖, 不在 classpath 时不加载; redis.client.metrics.enabled=false 时关闭</p>
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(prefix = "redis.client.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class RedisMetricsConfiguration {
+
+        @Bean
+        public RedisMetrics redisMetrics(@Qualifier("redisValueSerializer") RedisSerializer<Object> valueSerializer) {
+            return new RedisMetrics(valueSerializer);
+        }
+
+        /**
+         * 近端缓存与热点key依赖 redisTemplate, 所有单例创建完成后再绑定, 避免循环依赖
+         */
+        @Bean
+        public SmartInitializingSingleton redisMetricsBinder(RedisMetrics redisMetrics,
+                                                             ObjectProvider<NearCache> nearCache,
+                                                             ObjectProvider<HotKeyDetector> hotKeyDetector) {
+            return () -> {
+                nearCache.ifAvailable(redisMetrics::setNearCache);
+                hotKeyDetector.ifAvailable(redisMetrics::setHotKeyDetector);
+            };
+        }
+
+        /**
+         * 为 lettuce 连接池指定 JMX 名称前缀, 连接池指标只统计 lettuce 的连接池
+         */
+        @Bean
+        public LettuceClientConfigurationBuilderCustomizer redisPoolJmxCustomizer(RedisProperties redisProperties) {
+            return builder -> {
+                RedisProperties.Pool pool = redisProperties.getLettuce().getPool();
+                if (pool != null && builder instanceof LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder) {
+                    ((LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder) builder)
+                            .poolConfig(RedisMetrics.poolConfig(pool));
+                }
+            };
+        }
+    }
+
+}
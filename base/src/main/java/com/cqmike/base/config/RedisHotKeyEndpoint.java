@@ -0,0 +1,33 @@
+package com.cqmike.base.config;
+
+import com.cqmike.base.util.HotKeyDetector;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @program: common
+ * @description: 当前热点key, 通过 /actuator/redishotkeys 查看
+ * @author: chen qi
+ * @create: 2020-12-21 11:20
+ **/
+@Endpoint(id = "redishotkeys")
+public class RedisHotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public RedisHotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("threshold", hotKeyDetector.getThreshold());
+        result.put("localCacheSize", hotKeyDetector.localCacheSize());
+        result.put("hotKeys", hotKeyDetector.hotKeys());
+        return result;
+    }
+}
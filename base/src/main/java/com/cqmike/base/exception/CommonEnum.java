@@ -18,6 +18,7 @@ public enum CommonEnum implements BaseErrorInfoInterface {
     BODY_NOT_MATCH(402, "请求的数据格式不符!"),
     FORBIDDEN(403, "没有对应的权限!"),
     NOT_FOUND(404, "未找到该资源!"),
+    TOO_MANY_REQUESTS(429, "请求过于频繁，请稍后再试!"),
     INTERNAL_SERVER_ERROR(500, "服务器内部错误!"),
     SERVER_BUSY(503, "服务器正忙，请稍后再试!");
 
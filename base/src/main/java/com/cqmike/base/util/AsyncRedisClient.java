@@ -0,0 +1,276 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.exception.RedisException;
+import com.cqmike.base.util.RedisClient.Jackson2JsonRedisSerializer;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @program: common
+ * @description: 基于 lettuce 异步命令的非阻塞批量操作, 由 {@link RedisClient#async()} 获取
+ * <p>
+ * 多个互不依赖的读取可以同时发出再统一 join, 总耗时取决于最慢的一个而不是累加
+ * <pre>
+ *     CompletableFuture&lt;Map&lt;String, User&gt;&gt; users = redisClient.async().mget(keys, User.class);
+ *     CompletableFuture&lt;List&lt;Long&gt;&gt; ids = redisClient.async().lrange("ids", 0, -1, Long.class);
+ *     CompletableFuture.allOf(users, ids).join();
+ * </pre>
+ * 集群模式下多key命令按 slot 分组并行发出, 避免 CROSSSLOT
+ * <p>
+ * 命令发送在 lettuce 的共享连接上, 需要 LettuceConnectionFactory 开启 shareNativeConnection (默认开启);
+ * 反序列化与缓存失效在独立的回调线程池中执行, 不阻塞 lettuce 的 IO 线程
+ * @author: chen qi
+ * @create: 2020-12-17 10:30
+ **/
+public class AsyncRedisClient {
+
+    /**
+     * 多key命令每批的默认key数量
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * 默认的回调线程池, 所有实例共享
+     */
+    private static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    private final RedisClient redisClient;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 反序列化与缓存失效等回调的执行线程, 不占用 lettuce 的 IO 线程
+     */
+    private volatile Executor executor = DEFAULT_EXECUTOR;
+
+    AsyncRedisClient(RedisClient redisClient, RedisTemplate<String, Object> redisTemplate) {
+        this.redisClient = redisClient;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 指定回调的执行线程池, 不能使用 lettuce 的 IO 线程或同步执行的 Executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    /**
+     * 不存在的key不会出现在结果中
+     *
+     * @see #mget(String[], int)
+     */
+    public <T> CompletableFuture<Map<String, T>> mget(String[] keys, Class<T> clazz) {
+        return mget(keys, DEFAULT_CHUNK_SIZE).thenApplyAsync(values -> {
+            Map<String, T> map = new LinkedHashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (value == null) continue;
+                map.put(keys[i], Jackson2JsonRedisSerializer.deserialize(value, clazz));
+            }
+            return map;
+        }, executor);
+    }
+
+    /**
+     * 按 slot 分组的 MGET
+     * <p>集群模式下按 hash slot 分组, 单机模式下只有一组; 每组再按 chunkSize 分批, 所有批次并行发出,
+     * 结果按传入的key顺序返回, 不存在的key对应 null</p>
+     *
+     * @param keys      键
+     * @param chunkSize 每个 MGET 的最大key数量
+     * @return 反序列化后的原始值, 与 keys 一一对应
+     */
+    public CompletableFuture<List<Object>> mget(String[] keys, int chunkSize) {
+        RedisClusterAsyncCommands<byte[], byte[]> commands = commands();
+        Object[] results = new Object[keys.length];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (List<Integer> chunk : chunks(keys, chunkSize, commands instanceof RedisAdvancedClusterAsyncCommands)) {
+            byte[][] rawKeys = new byte[chunk.size()][];
+            for (int i = 0; i < chunk.size(); i++) {
+                rawKeys[i] = rawKey(keys[chunk.get(i)]);
+            }
+            futures.add(commands.mget(rawKeys).toCompletableFuture().thenAcceptAsync(values -> {
+                for (int i = 0; i < values.size(); i++) {
+                    KeyValue<byte[], byte[]> kv = values.get(i);
+                    results[chunk.get(i)] = kv.hasValue() ? valueSerializer().deserialize(kv.getValue()) : null;
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> Arrays.asList(results));
+    }
+
+    /**
+     * 按 slot 分组的 MSET, 分组与分批方式同 {@link #mget(String[], int)}
+     * <p>集群模式下不同 slot 之间不保证原子性</p>
+     *
+     * @param keys      键
+     * @param values    值
+     * @param chunkSize 每个 MSET 的最大key数量
+     */
+    public <T> CompletableFuture<Void> mset(String[] keys, T[] values, int chunkSize) {
+        if (keys == null || values == null || keys.length != values.length) {
+            throw new RedisException("wrong number of arguments for MSET");
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = commands();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (List<Integer> chunk : chunks(keys, chunkSize, commands instanceof RedisAdvancedClusterAsyncCommands)) {
+            Map<byte[], byte[]> kvMap = new LinkedHashMap<>();
+            for (Integer index : chunk) {
+                kvMap.put(rawKey(keys[index]), valueSerializer().serialize(values[index]));
+            }
+            futures.add(commands.mset(kvMap).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> redisClient.invalidate(keys), executor);
+    }
+
+    /**
+     * 不存在的字段不会出现在结果中
+     */
+    public <T> CompletableFuture<Map<String, T>> hmget(String key, Class<T> clazz, String... fields) {
+        return commands().hmget(rawKey(key), rawKeys(fields)).toCompletableFuture().thenApplyAsync(values -> {
+            Map<String, T> result = new HashMap<>();
+            for (KeyValue<byte[], byte[]> kv : values) {
+                if (!kv.hasValue()) continue;
+                result.put(new String(kv.getKey(), StandardCharsets.UTF_8), deserialize(hashValueSerializer(), kv.getValue(), clazz));
+            }
+            return result;
+        }, executor);
+    }
+
+    public <T> CompletableFuture<Map<String, T>> hgetAll(String key, Class<T> clazz) {
+        return commands().hgetall(rawKey(key)).toCompletableFuture().thenApplyAsync(entries -> {
+            Map<String, T> result = new HashMap<>();
+            entries.forEach((k, v) -> result.put(new String(k, StandardCharsets.UTF_8), deserialize(hashValueSerializer(), v, clazz)));
+            return result;
+        }, executor);
+    }
+
+    public <T> CompletableFuture<Set<T>> smembers(String key, Class<T> clazz) {
+        return commands().smembers(rawKey(key)).toCompletableFuture().thenApplyAsync(values -> {
+            Set<T> result = new HashSet<>();
+            values.forEach(v -> result.add(deserialize(valueSerializer(), v, clazz)));
+            return result;
+        }, executor);
+    }
+
+    public <T> CompletableFuture<List<T>> lrange(String key, int start, int stop, Class<T> clazz) {
+        return commands().lrange(rawKey(key), start, stop).toCompletableFuture().thenApplyAsync(values -> {
+            List<T> result = new ArrayList<>(values.size());
+            values.forEach(v -> result.add(deserialize(valueSerializer(), v, clazz)));
+            return result;
+        }, executor);
+    }
+
+    /**
+     * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     */
+    public CompletableFuture<Void> setex(String key, Object value, int time) {
+        byte[] rawValue = valueSerializer().serialize(value);
+        RedisClusterAsyncCommands<byte[], byte[]> commands = commands();
+        CompletableFuture<String> future = time > 0
+                ? commands.setex(rawKey(key), time, rawValue).toCompletableFuture()
+                : commands.set(rawKey(key), rawValue).toCompletableFuture();
+        // 近端缓存失效会同步发布通知, 不能在 lettuce 的 IO 线程上执行
+        return future.thenAcceptAsync(status -> redisClient.invalidate(key), executor);
+    }
+
+    // ============================internal=============================
+
+    /**
+     * 是否可以使用异步命令
+     */
+    boolean isSupported() {
+        RedisConnectionFactory connectionFactory = redisTemplate.getRequiredConnectionFactory();
+        return connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).getShareNativeConnection();
+    }
+
+    private static Executor defaultExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "redis-async-callback-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * 将key的下标按 slot 分组后再按 chunkSize 切分
+     */
+    static List<List<Integer>> chunks(String[] keys, int chunkSize, boolean cluster) {
+        if (chunkSize <= 0) {
+            throw new RedisException("chunkSize must be greater than 0");
+        }
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            int slot = cluster ? RedisClient.slot(keys[i]) : 0;
+            groups.computeIfAbsent(slot, k -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            for (int from = 0; from < group.size(); from += chunkSize) {
+                chunks.add(group.subList(from, Math.min(from + chunkSize, group.size())));
+            }
+        }
+        return chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisClusterAsyncCommands<byte[], byte[]> commands() {
+        if (!isSupported()) {
+            throw new RedisException("async commands require a shared lettuce native connection");
+        }
+        Object nativeConnection = redisTemplate.execute((RedisCallback<Object>) connection -> connection.getNativeConnection());
+        if (!(nativeConnection instanceof RedisClusterAsyncCommands)) {
+            throw new RedisException("async commands require a lettuce connection");
+        }
+        return (RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> valueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashValueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    }
+
+    private static <T> T deserialize(RedisSerializer<Object> serializer, byte[] bytes, Class<T> clazz) {
+        return Jackson2JsonRedisSerializer.deserialize(serializer.deserialize(bytes), clazz);
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] rawKeys(String[] keys) {
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = rawKey(keys[i]);
+        }
+        return rawKeys;
+    }
+}
@@ -0,0 +1,159 @@
+package com.cqmike.base.util;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @program: common
+ * @description: 压缩序列化包装
+ * <p>
+ * 序列化后超过阈值的值使用 Deflate 压缩, 并在头部写入 {@link #MAGIC} 标记;
+ * 读取时根据头部自动识别压缩与未压缩的数据, json 与 smile 数据均不会以该字节开头
+ * @author: chen qi
+ * @create: 2020-12-14 10:25
+ **/
+public class CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 压缩数据头, 不是合法的 utf-8 起始字节
+     */
+    public static final byte MAGIC = (byte) 0xC1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final RedisSerializer<Object> delegate;
+    private final int threshold;
+    private final int level;
+
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressedCount = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    /**
+     * @param delegate  实际的序列化器
+     * @param threshold 压缩阈值(字节) 序列化后超过该大小才压缩
+     * @param level     压缩级别 {@link Deflater#BEST_SPEED} ~ {@link Deflater#BEST_COMPRESSION}
+     */
+    public CompressingRedisSerializer(RedisSerializer<Object> delegate, int threshold, int level) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    @Override
+    public byte[] serialize(Object t) throws SerializationException {
+        byte[] bytes = delegate.serialize(t);
+        if (bytes == null || bytes.length < threshold) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = compress(bytes);
+        compressNanos.add(System.nanoTime() - start);
+        // 压缩后没有变小时保留原始数据
+        if (compressed.length >= bytes.length) {
+            return bytes;
+        }
+        compressedCount.increment();
+        rawBytes.add(bytes.length);
+        compressedBytes.add(compressed.length);
+        return compressed;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != MAGIC) {
+            return delegate.deserialize(bytes);
+        }
+        long start = System.nanoTime();
+        byte[] decompressed = decompress(bytes);
+        decompressNanos.add(System.nanoTime() - start);
+        decompressedCount.increment();
+        return delegate.deserialize(decompressed);
+    }
+
+    private byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 1);
+            out.write(MAGIC);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("Could not inflate: truncated data");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("Could not inflate: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ============================metrics=============================
+
+    /**
+     * 被压缩的值的数量
+     */
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    /**
+     * 被解压的值的数量
+     */
+    public long getDecompressedCount() {
+        return decompressedCount.sum();
+    }
+
+    /**
+     * 压缩率 压缩后字节数 / 压缩前字节数
+     */
+    public double getCompressionRatio() {
+        long raw = rawBytes.sum();
+        return raw == 0 ? 1.0 : (double) compressedBytes.sum() / raw;
+    }
+
+    /**
+     * 压缩累计耗时(纳秒), 包含压缩后未变小而放弃的部分
+     */
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    /**
+     * 解压累计耗时(纳秒)
+     */
+    public long getDecompressNanos() {
+        return decompressNanos.sum();
+    }
+}
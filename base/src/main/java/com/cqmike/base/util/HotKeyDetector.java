@@ -0,0 +1,224 @@
+package com.cqmike.base.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * @program: common
+ * @description: 热点key探测
+ * <p>
+ * 对访问的key按 sampleRate 抽样, 计入滑动窗口内的 count-min sketch; 窗口内估算访问量超过阈值的key视为热点,
+ * 热点key的值会被提升到一个短过期时间的本地缓存中, 减少对单个 redis 分片的读取压力.
+ * 本地缓存保存序列化后的字节, 由调用方每次反序列化, 避免多个调用方共享同一个可变对象
+ * @author: chen qi
+ * @create: 2020-12-21 11:20
+ **/
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+    private static final int SLICES = 5;
+    private static final String SEPARATOR = "\n";
+
+    private final int width;
+    private final int sampleRate;
+    private final long threshold;
+    private final long sliceMillis;
+
+    /**
+     * 每个时间片一个 sketch, 按 depth * width 平铺
+     */
+    private final AtomicLongArray[] sketches = new AtomicLongArray[SLICES];
+    private volatile int current;
+    private volatile long sliceStart = System.currentTimeMillis();
+
+    /**
+     * 当前热点key 及其窗口内的估算访问量
+     */
+    private final Cache<String, Long> hotKeys;
+
+    /**
+     * 热点key的本地缓存
+     */
+    private final Cache<String, byte[]> localCache;
+
+    /**
+     * @param width            sketch 每行的计数器数量
+     * @param sampleRate       抽样率 每 sampleRate 次访问记录一次
+     * @param threshold        窗口内的访问量阈值
+     * @param window           滑动窗口大小
+     * @param topK             最多记录的热点key数量
+     * @param localTtl         热点key本地缓存的过期时间
+     * @param localMaximumSize 热点key本地缓存的最大条目数
+     */
+    public HotKeyDetector(int width, int sampleRate, long threshold, Duration window, int topK,
+                          Duration localTtl, long localMaximumSize) {
+        this.width = width;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.threshold = threshold;
+        this.sliceMillis = Math.max(window.toMillis() / SLICES, 1);
+        for (int i = 0; i < SLICES; i++) {
+            sketches[i] = new AtomicLongArray(DEPTH * width);
+        }
+        this.hotKeys = CacheBuilder.newBuilder()
+                .maximumSize(topK)
+                .expireAfterWrite(window.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 读取值, 热点key优先从本地缓存读取
+     *
+     * @param key    redis key
+     * @param loader redis 读取原始字节
+     * @return redis 中的原始字节
+     */
+    public byte[] get(String key, Supplier<byte[]> loader) {
+        return get(key, key, loader);
+    }
+
+    /**
+     * 读取hash字段的值, 按 redis key 统计热度, 按字段缓存
+     *
+     * @param key    redis key
+     * @param field  字段
+     * @param loader redis 读取原始字节
+     * @return redis 中的原始字节
+     */
+    public byte[] hget(String key, String field, Supplier<byte[]> loader) {
+        return get(key, key + SEPARATOR + field, loader);
+    }
+
+    private byte[] get(String key, String cacheKey, Supplier<byte[]> loader) {
+        boolean hot = record(key);
+        if (hot) {
+            byte[] value = localCache.getIfPresent(cacheKey);
+            if (value != null) {
+                return value;
+            }
+        }
+        byte[] value = loader.get();
+        if (hot && value != null) {
+            localCache.put(cacheKey, value);
+        }
+        return value;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key redis key
+     * @return 是否为热点key
+     */
+    public boolean record(String key) {
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            long estimate = increment(key) * sampleRate;
+            if (estimate >= threshold) {
+                hotKeys.put(key, estimate);
+                return true;
+            }
+        }
+        return hotKeys.getIfPresent(key) != null;
+    }
+
+    /**
+     * 本节点写入后清除本地缓存
+     *
+     * @param key redis key
+     */
+    public void invalidate(String key) {
+        localCache.invalidate(key);
+        if (localCache.size() > 0) {
+            String prefix = key + SEPARATOR;
+            localCache.asMap().keySet().removeIf(k -> k.startsWith(prefix));
+        }
+    }
+
+    public void invalidate(String key, String field) {
+        localCache.invalidate(key);
+        localCache.invalidate(key + SEPARATOR + field);
+    }
+
+    /**
+     * 当前热点key 按估算访问量倒序
+     *
+     * @return key -> 窗口内估算访问量
+     */
+    public Map<String, Long> hotKeys() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        hotKeys.asMap().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public long localCacheSize() {
+        return localCache.size();
+    }
+
+    /**
+     * 计入当前时间片, 返回整个窗口内的估算值
+     */
+    private long increment(String key) {
+        rotate();
+        long hash = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        AtomicLongArray sketch = sketches[current];
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = i * width + Math.floorMod(h1 + i * h2, width);
+            sketch.incrementAndGet(index);
+            long total = 0;
+            for (AtomicLongArray slice : sketches) {
+                total += slice.get(index);
+            }
+            estimate = Math.min(estimate, total);
+        }
+        return estimate;
+    }
+
+    /**
+     * 时间片到期后切换到下一个时间片并清空, 丢弃最旧的计数
+     */
+    private void rotate() {
+        long now = System.currentTimeMillis();
+        if (now - sliceStart < sliceMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - sliceStart < sliceMillis) {
+                return;
+            }
+            // 空闲超过整个窗口时全部清空
+            long elapsed = Math.min((now - sliceStart) / sliceMillis, SLICES);
+            int next = current;
+            for (long i = 0; i < elapsed; i++) {
+                next = (next + 1) % SLICES;
+                AtomicLongArray sketch = sketches[next];
+                for (int j = 0; j < sketch.length(); j++) {
+                    sketch.set(j, 0);
+                }
+            }
+            current = next;
+            sliceStart = now;
+        }
+    }
+}
@@ -90,6 +90,46 @@ public class JsonUtils {
     }
 
 
+    /**
+     * 对象 => 对象, 直接基于对象树转换, 不经过json字符串
+     *
+     * @param value 源对象 如 LinkedHashMap
+     * @param clazz 对象类
+     * @param <T>   泛型
+     */
+    public static <T> T convert(Object value, Class<T> clazz) {
+
+        if (value == null) {
+            return null;
+        }
+        try {
+            return om.convertValue(value, clazz);
+        } catch (IllegalArgumentException e) {
+            log.warn(e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 对象 => 对象, 直接基于对象树转换, 不经过json字符串
+     *
+     * @param value 源对象 如 LinkedHashMap
+     * @param type  对象类型
+     * @param <T>   泛型
+     */
+    public static <T> T convert(Object value, TypeReference<T> type) {
+
+        if (value == null) {
+            return null;
+        }
+        try {
+            return om.convertValue(value, type);
+        } catch (IllegalArgumentException e) {
+            log.warn(e.getMessage(), e);
+            throw e;
+        }
+    }
+
     /**
      * json => 对象处理方法
      * <br>
@@ -0,0 +1,34 @@
+package com.cqmike.base.util;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * @program: common
+ * @description: 采集命令指标的 redisTemplate, 每次获取连接后交给 {@link ConnectionInstrumenter} 代理
+ * @author: chen qi
+ * @create: 2020-12-22 16:45
+ **/
+public class MeteredRedisTemplate<K, V> extends RedisTemplate<K, V> {
+
+    private final ConnectionInstrumenter instrumenter;
+
+    public MeteredRedisTemplate(ConnectionInstrumenter instrumenter) {
+        this.instrumenter = instrumenter;
+    }
+
+    @Override
+    protected RedisConnection preProcessConnection(RedisConnection connection, boolean existingConnection) {
+        return instrumenter.instrument(super.preProcessConnection(connection, existingConnection));
+    }
+
+    /**
+     * 连接的代理, 不依赖 micrometer, micrometer 不在 classpath 时配置类仍可加载
+     *
+     * @see RedisMetrics
+     */
+    public interface ConnectionInstrumenter {
+
+        RedisConnection instrument(RedisConnection connection);
+    }
+}
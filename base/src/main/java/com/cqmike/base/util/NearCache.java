@@ -0,0 +1,317 @@
+package com.cqmike.base.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: common
+ * @description: 本地近端缓存 (L1), 位于 redis (L2) 之前
+ * <p>
+ * 只缓存匹配 keyPrefixes 的key, 本节点写入时先清除本地缓存, 再通过 redis pub/sub 通知其他节点清除
+ * <p>
+ * 本地保存序列化后的字节, 每次命中重新反序列化, 调用方修改返回的对象不会影响缓存; 条目的过期时间不超过 redis 中key的剩余 PTTL.
+ * 加载前记录key所在分段的失效版本号, 条目携带该版本, 加载期间收到失效通知时版本变化, 加载出的旧值不会被命中.
+ * hash 按 key+字段 缓存, maximumSize 限制的是字段数量
+ * @author: chen qi
+ * @create: 2020-12-13 09:40
+ **/
+public class NearCache implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCache.class);
+
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * 失效版本号的分段数, 不同key落在同一分段时只会多一次未命中
+     */
+    private static final int STRIPES = 4096;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final String channel;
+    private final List<String> keyPrefixes;
+    private final long expireAfterWriteMillis;
+
+    /**
+     * 当前节点标识, 忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Cache<String, Entry> values;
+
+    /**
+     * key\nfield -> 字段值
+     */
+    private final Cache<String, Entry> fields;
+
+    /**
+     * 按 key 或 key\nfield 哈希分段的失效版本号, 每次失效加一
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public NearCache(RedisTemplate<String, Object> redisTemplate, String channel, List<String> keyPrefixes,
+                     long maximumSize, Duration expireAfterWrite) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.keyPrefixes = new ArrayList<>(keyPrefixes);
+        this.expireAfterWriteMillis = expireAfterWrite.toMillis();
+        this.values = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.fields = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * 是否需要本地缓存
+     *
+     * @param key 键
+     * @return true 需要
+     */
+    public boolean accept(String key) {
+        for (String prefix : keyPrefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取本地缓存, 未命中时通过一次 pipeline 读取 GET 与 PTTL, null 值不缓存
+     *
+     * @param key 键
+     * @return 按 value 序列化器反序列化的值, 每次调用都是新的对象
+     */
+    public Object get(String key) {
+        Entry entry = values.getIfPresent(key);
+        if (isValid(entry)) {
+            hitCount.increment();
+            return redisTemplate.getValueSerializer().deserialize(entry.value);
+        }
+        missCount.increment();
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        entry = load(rawKey, (connection, k) -> connection.get(k), stripe, generation, -1, 0);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt > 0) {
+            values.put(key, entry);
+        }
+        return redisTemplate.getValueSerializer().deserialize(entry.value);
+    }
+
+    /**
+     * 读取hash字段的本地缓存, 未命中时通过一次 pipeline 读取 HGET 与 key 的 PTTL, null 值不缓存
+     *
+     * @param key   键
+     * @param field 字段
+     * @return 按 hash value 序列化器反序列化的值, 每次调用都是新的对象
+     */
+    public Object hget(String key, String field) {
+        String fieldKey = key + SEPARATOR + field;
+        Entry entry = fields.getIfPresent(fieldKey);
+        if (isValid(entry)) {
+            hitCount.increment();
+            return redisTemplate.getHashValueSerializer().deserialize(entry.value);
+        }
+        missCount.increment();
+        int keyStripe = stripe(key);
+        int fieldStripe = stripe(fieldKey);
+        long keyGeneration = generations.get(keyStripe);
+        long fieldGeneration = generations.get(fieldStripe);
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawField = field.getBytes(StandardCharsets.UTF_8);
+        entry = load(rawKey, (connection, k) -> connection.hGet(k, rawField), keyStripe, keyGeneration,
+                fieldStripe, fieldGeneration);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt > 0) {
+            fields.put(fieldKey, entry);
+        }
+        return redisTemplate.getHashValueSerializer().deserialize(entry.value);
+    }
+
+    /**
+     * 清除本节点及其他节点的key缓存
+     *
+     * @param key 键
+     */
+    public void invalidate(String key) {
+        evict(key, null);
+        publish(key, null);
+    }
+
+    /**
+     * 清除本节点及其他节点的hash字段缓存
+     *
+     * @param key   键
+     * @param field 字段
+     */
+    public void invalidate(String key, String field) {
+        evict(key, field);
+        publish(key, field);
+    }
+
+    /**
+     * 清除全部本地缓存, 不通知其他节点
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        values.invalidateAll();
+        fields.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 因容量或过期被淘汰的条目数, string 与 hash 字段合计
+     */
+    public long getEvictionCount() {
+        return values.stats().evictionCount() + fields.stats().evictionCount();
+    }
+
+    public double getHitRate() {
+        long hit = getHitCount();
+        long total = hit + getMissCount();
+        return total == 0 ? 1.0 : (double) hit / total;
+    }
+
+    public long size() {
+        return values.size() + fields.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String[] parts = body.toString().split(SEPARATOR, 3);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        evict(parts[1], parts.length > 2 ? parts[2] : null);
+    }
+
+    /**
+     * 先增加版本号再清除条目, 正在加载的旧值因版本不一致不会被命中
+     */
+    private void evict(String key, String field) {
+        if (field == null) {
+            // hash 的所有字段条目都记录了 key 分段的版本号, 随之失效, 由容量和过期时间淘汰
+            generations.incrementAndGet(stripe(key));
+            values.invalidate(key);
+            return;
+        }
+        String fieldKey = key + SEPARATOR + field;
+        generations.incrementAndGet(stripe(fieldKey));
+        values.invalidate(key);
+        fields.invalidate(fieldKey);
+    }
+
+    /**
+     * @return 值不存在时返回 null; 条目的 expireAt 为 0 表示不缓存
+     */
+    private Entry load(byte[] rawKey, BiConsumer<RedisConnection, byte[]> read, int keyStripe, long keyGeneration,
+                       int fieldStripe, long fieldGeneration) {
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            read.accept(connection, rawKey);
+            connection.pTtl(rawKey);
+            return connection.closePipeline();
+        });
+        if (results == null || results.size() < 2 || !(results.get(0) instanceof byte[])) {
+            return null;
+        }
+        byte[] value = (byte[]) results.get(0);
+        long pttl = results.get(1) instanceof Number ? ((Number) results.get(1)).longValue() : -1;
+        long ttl = pttl > 0 ? Math.min(pttl, expireAfterWriteMillis) : pttl == -1 ? expireAfterWriteMillis : 0;
+        long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        return new Entry(value, expireAt, keyStripe, keyGeneration, fieldStripe, fieldGeneration);
+    }
+
+    private boolean isValid(Entry entry) {
+        return entry != null && System.currentTimeMillis() < entry.expireAt
+                && generations.get(entry.keyStripe) == entry.keyGeneration
+                && (entry.fieldStripe < 0 || generations.get(entry.fieldStripe) == entry.fieldGeneration);
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private void publish(String key, String field) {
+        String body = nodeId + SEPARATOR + key + (field == null ? "" : SEPARATOR + field);
+        try {
+            redisTemplate.convertAndSend(channel, body);
+        } catch (Exception e) {
+            // 通知失败时其他节点依靠过期时间兜底
+            log.error("near cache invalidate publish error: key={}, field={}", key, field, e);
+        }
+    }
+
+    /**
+     * 本地缓存条目: 序列化后的值, 过期时间点, 加载前记录的失效版本号
+     */
+    private static final class Entry {
+
+        private final byte[] value;
+        private final long expireAt;
+        private final int keyStripe;
+        private final long keyGeneration;
+        private final int fieldStripe;
+        private final long fieldGeneration;
+
+        private Entry(byte[] value, long expireAt, int keyStripe, long keyGeneration, int fieldStripe,
+                      long fieldGeneration) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.keyStripe = keyStripe;
+            this.keyGeneration = keyGeneration;
+            this.fieldStripe = fieldStripe;
+            this.fieldGeneration = fieldGeneration;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.cqmike.base.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: 基于 redis 的分布式限流, 每次判断为一次 lua 脚本调用
+ * <ul>
+ *     <li>SLIDING_LOG 滑动窗口日志 zset 记录每次请求的时间, 精确但内存占用与 limit 成正比</li>
+ *     <li>FIXED_WINDOW 固定窗口计数 开销最小, 窗口边界处最多允许 2 倍的请求</li>
+ *     <li>TOKEN_BUCKET 令牌桶 容量为 limit, 每个窗口补充 limit 个令牌, 允许突发</li>
+ * </ul>
+ * 开启本地预检时每个节点按相同的参数维护一个本地令牌桶; 单个节点的请求已经超过全局限制时直接拒绝, 不访问 redis.
+ * 滑动窗口与令牌桶使用 redis 服务端时间, 不受节点时钟偏差影响
+ * @author: chen qi
+ * @create: 2020-12-25 10:10
+ **/
+public class RateLimiter {
+
+    public enum Strategy {
+        SLIDING_LOG,
+        FIXED_WINDOW,
+        TOKEN_BUCKET
+    }
+
+    /**
+     * ARGV: limit, window(ms), permits, 请求id
+     */
+    private static final String SLIDING_LOG_SCRIPT = "redis.replicate_commands()\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+            "local limit = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "local permits = tonumber(ARGV[3])\n" +
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', now - window)\n" +
+            "if redis.call('zcard', KEYS[1]) + permits > limit then return 0 end\n" +
+            "for i = 1, permits do redis.call('zadd', KEYS[1], now, ARGV[4] .. ':' .. i) end\n" +
+            "redis.call('pexpire', KEYS[1], window)\n" +
+            "return 1";
+
+    /**
+     * ARGV: limit, window(ms), permits
+     */
+    private static final String FIXED_WINDOW_SCRIPT = "local count = redis.call('incrby', KEYS[1], ARGV[3])\n" +
+            "if redis.call('pttl', KEYS[1]) < 0 then redis.call('pexpire', KEYS[1], ARGV[2]) end\n" +
+            "if count > tonumber(ARGV[1]) then return 0 end\n" +
+            "return 1";
+
+    /**
+     * ARGV: capacity, window(ms), permits; 每个窗口补充 capacity 个令牌
+     */
+    private static final String TOKEN_BUCKET_SCRIPT = "redis.replicate_commands()\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+            "local capacity = tonumber(ARGV[1])\n" +
+            "local window = tonumber(ARGV[2])\n" +
+            "local permits = tonumber(ARGV[3])\n" +
+            "local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')\n" +
+            "local tokens = tonumber(bucket[1])\n" +
+            "local ts = tonumber(bucket[2])\n" +
+            "if tokens == nil or ts == nil then\n" +
+            "    tokens = capacity\n" +
+            "    ts = now\n" +
+            "end\n" +
+            "tokens = math.min(capacity, tokens + math.max(0, now - ts) * capacity / window)\n" +
+            "local allowed = 0\n" +
+            "if tokens >= permits then\n" +
+            "    tokens = tokens - permits\n" +
+            "    allowed = 1\n" +
+            "end\n" +
+            "redis.call('hmset', KEYS[1], 'tokens', tostring(tokens), 'ts', now)\n" +
+            "redis.call('pexpire', KEYS[1], window)\n" +
+            "return allowed";
+
+    private final RedisClient redisClient;
+
+    /**
+     * 本地令牌桶 key -> bucket, 长时间未访问的自动移除
+     */
+    private final Cache<String, LocalTokenBucket> localBuckets = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    public RateLimiter(RedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    /**
+     * 注册限流脚本, 用于启动时预加载
+     */
+    public void registerScripts() {
+        redisClient.script(SLIDING_LOG_SCRIPT, Long.class);
+        redisClient.script(FIXED_WINDOW_SCRIPT, Long.class);
+        redisClient.script(TOKEN_BUCKET_SCRIPT, Long.class);
+    }
+
+    /**
+     * 获取一个许可, 开启本地预检
+     *
+     * @see #tryAcquire(String, Strategy, long, long, TimeUnit, int, boolean)
+     */
+    public boolean tryAcquire(String key, Strategy strategy, long limit, long window, TimeUnit unit) {
+        return tryAcquire(key, strategy, limit, window, unit, 1, true);
+    }
+
+    /**
+     * 尝试获取许可
+     *
+     * @param key           限流的key
+     * @param strategy      限流算法
+     * @param limit         每个窗口允许的请求数
+     * @param window        窗口大小
+     * @param unit          窗口单位
+     * @param permits       本次请求消耗的许可数
+     * @param localPreCheck 是否先经过本地令牌桶
+     * @return 是否允许
+     */
+    public boolean tryAcquire(String key, Strategy strategy, long limit, long window, TimeUnit unit, int permits,
+                              boolean localPreCheck) {
+        long windowMillis = Math.max(unit.toMillis(window), 1);
+        if (localPreCheck && !localBucket(key, limit, windowMillis).tryAcquire(permits)) {
+            return false;
+        }
+        List<String> args;
+        String script;
+        switch (strategy) {
+            case SLIDING_LOG:
+                script = SLIDING_LOG_SCRIPT;
+                args = Arrays.asList(String.valueOf(limit), String.valueOf(windowMillis), String.valueOf(permits),
+                        UUID.randomUUID().toString());
+                break;
+            case FIXED_WINDOW:
+                script = FIXED_WINDOW_SCRIPT;
+                args = Arrays.asList(String.valueOf(limit), String.valueOf(windowMillis), String.valueOf(permits));
+                break;
+            case TOKEN_BUCKET:
+            default:
+                script = TOKEN_BUCKET_SCRIPT;
+                args = Arrays.asList(String.valueOf(limit), String.valueOf(windowMillis), String.valueOf(permits));
+                break;
+        }
+        Long result = redisClient.eval(redisClient.script(script, Long.class), Collections.singletonList(key), args);
+        return Objects.equals(RedisLockUtil.SUCCESS, result);
+    }
+
+    private LocalTokenBucket localBucket(String key, long limit, long windowMillis) {
+        try {
+            LocalTokenBucket bucket = localBuckets.get(key, () -> new LocalTokenBucket(limit, windowMillis));
+            if (bucket.capacity != limit || bucket.windowMillis != windowMillis) {
+                // 同一个key的参数变化时重新创建
+                bucket = new LocalTokenBucket(limit, windowMillis);
+                localBuckets.put(key, bucket);
+            }
+            return bucket;
+        } catch (ExecutionException e) {
+            return new LocalTokenBucket(limit, windowMillis);
+        }
+    }
+
+    /**
+     * 本地令牌桶, 参数与全局限制相同; 只拒绝单个节点已经超过全局限制的请求
+     */
+    private static final class LocalTokenBucket {
+
+        private final long capacity;
+        private final long windowMillis;
+        private double tokens;
+        private long lastNanos;
+
+        private LocalTokenBucket(long capacity, long windowMillis) {
+            this.capacity = capacity;
+            this.windowMillis = windowMillis;
+            this.tokens = capacity;
+            this.lastNanos = System.nanoTime();
+        }
+
+        private synchronized boolean tryAcquire(int permits) {
+            long now = System.nanoTime();
+            double elapsedMillis = (now - lastNanos) / 1_000_000D;
+            tokens = Math.min(capacity, tokens + elapsedMillis * capacity / windowMillis);
+            lastNanos = now;
+            if (tokens < permits) {
+                return false;
+            }
+            tokens -= permits;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.util.RedisClient.Jackson2JsonRedisSerializer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * @program: common
+ * @description: 响应式 redis 客户端, 与 {@link RedisClient} 的接口保持一致, 不阻塞调用线程
+ * <p>
+ * 基于 {@link ReactiveRedisTemplate}, 与 redisTemplate 共用同一个 value 序列化器;
+ * 写入成功后失效 {@link RedisClient} 的近端缓存与热点key本地缓存, 失效会同步发布通知, 切换到 boundedElastic 线程执行
+ * @author: chen qi
+ * @create: 2020-12-16 20:05
+ **/
+public class ReactiveRedisClient {
+
+    private final ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    /**
+     * 本地缓存所在的阻塞客户端, 为空时写入后不做失效
+     */
+    private final RedisClient redisClient;
+
+    /**
+     * 脚本的 ARGV 与字符串结果按 utf-8 读写
+     */
+    private static final RedisElementWriter<String> ARGS_WRITER = RedisElementWriter.from(StringRedisSerializer.UTF_8);
+
+    public ReactiveRedisClient(ReactiveRedisTemplate<String, Object> reactiveRedisTemplate) {
+        this(reactiveRedisTemplate, null);
+    }
+
+    public ReactiveRedisClient(ReactiveRedisTemplate<String, Object> reactiveRedisTemplate, RedisClient redisClient) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.redisClient = redisClient;
+    }
+
+    // =============================common============================
+
+    public Mono<Boolean> hasKey(String key) {
+        return reactiveRedisTemplate.hasKey(key).defaultIfEmpty(Boolean.FALSE);
+    }
+
+    public Mono<Long> del(String... keys) {
+        return invalidate(reactiveRedisTemplate.delete(keys).defaultIfEmpty(0L), keys);
+    }
+
+    /**
+     * @param time 时间(秒)
+     */
+    public Mono<Boolean> expire(String key, int time) {
+        return invalidate(reactiveRedisTemplate.expire(key, Duration.ofSeconds(time)).defaultIfEmpty(Boolean.FALSE), key);
+    }
+
+    /**
+     * SCAN 遍历匹配的key
+     *
+     * @param keyPattern 匹配模式
+     * @param count      SCAN COUNT 提示
+     * @return keys
+     */
+    public Flux<String> scan(String keyPattern, int count) {
+        return reactiveRedisTemplate.scan(ScanOptions.scanOptions().match(keyPattern).count(count).build());
+    }
+
+    // ============================String=============================
+
+    public <T> Mono<T> get(String key, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForValue().get(key)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    public <T> Mono<T> get(String key, TypeReference<T> type) {
+        return reactiveRedisTemplate.opsForValue().get(key)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, type));
+    }
+
+    public Mono<Boolean> set(String key, Object value) {
+        return invalidate(reactiveRedisTemplate.opsForValue().set(key, value), key);
+    }
+
+    /**
+     * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     */
+    public Mono<Boolean> setex(String key, Object value, int time) {
+        if (time > 0) {
+            return invalidate(reactiveRedisTemplate.opsForValue().set(key, value, Duration.ofSeconds(time)), key);
+        }
+        return set(key, value);
+    }
+
+    public Mono<Long> incr(String key, long delta) {
+        return invalidate(reactiveRedisTemplate.opsForValue().increment(key, delta), key);
+    }
+
+    /**
+     * 不存在的key不会出现在结果中
+     */
+    public <T> Mono<Map<String, T>> mget(String[] keys, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForValue().multiGet(Arrays.asList(keys)).map(values -> {
+            Map<String, T> map = new LinkedHashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (value == null) continue;
+                map.put(keys[i], Jackson2JsonRedisSerializer.deserialize(value, clazz));
+            }
+            return map;
+        });
+    }
+
+    // ================================Map=================================
+
+    public Mono<Boolean> hset(String key, String field, Object value) {
+        return invalidateFields(reactiveRedisTemplate.opsForHash().put(key, field, value), key, field);
+    }
+
+    public <T> Mono<T> hget(String key, String field, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForHash().get(key, field)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    public <T> Mono<T> hget(String key, String field, TypeReference<T> type) {
+        return reactiveRedisTemplate.opsForHash().get(key, field)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, type));
+    }
+
+    public <T> Mono<Map<String, T>> hgetAll(String key, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForHash().entries(key)
+                .collectMap(e -> e.getKey().toString(), e -> Jackson2JsonRedisSerializer.deserialize(e.getValue(), clazz));
+    }
+
+    public <T> Mono<Map<String, T>> hmget(String key, Class<T> clazz, String... fields) {
+        return reactiveRedisTemplate.opsForHash().multiGet(key, Arrays.asList(fields)).map(values -> {
+            Map<String, T> result = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                Object value = values.get(i);
+                if (value == null) continue;
+                result.put(fields[i], Jackson2JsonRedisSerializer.deserialize(value, clazz));
+            }
+            return result;
+        });
+    }
+
+    public Mono<Long> hdel(String key, String... fields) {
+        return invalidateFields(reactiveRedisTemplate.opsForHash().remove(key, (Object[]) fields), key, fields);
+    }
+
+    // ============================set=============================
+
+    @SafeVarargs
+    public final <T> Mono<Long> sadd(String key, T... members) {
+        return reactiveRedisTemplate.opsForSet().add(key, members);
+    }
+
+    @SafeVarargs
+    public final <T> Mono<Long> srem(String key, T... members) {
+        return reactiveRedisTemplate.opsForSet().remove(key, members);
+    }
+
+    public Mono<Boolean> sismember(String key, Object member) {
+        return reactiveRedisTemplate.opsForSet().isMember(key, member);
+    }
+
+    public <T> Flux<T> smembers(String key, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForSet().members(key)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    // ===============================list=================================
+
+    @SafeVarargs
+    public final <T> Mono<Long> lpush(String key, T... values) {
+        return reactiveRedisTemplate.opsForList().leftPushAll(key, values);
+    }
+
+    @SafeVarargs
+    public final <T> Mono<Long> rpush(String key, T... values) {
+        return reactiveRedisTemplate.opsForList().rightPushAll(key, values);
+    }
+
+    public <T> Flux<T> lrange(String key, int start, int stop, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForList().range(key, start, stop)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    public <T> Mono<T> lpop(String key, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForList().leftPop(key)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    public <T> Mono<T> rpop(String key, Class<T> clazz) {
+        return reactiveRedisTemplate.opsForList().rightPop(key)
+                .map(value -> Jackson2JsonRedisSerializer.deserialize(value, clazz));
+    }
+
+    // ===============================script=================================
+
+    /**
+     * 执行 lua 脚本, 使用 EVALSHA 执行, 服务端不存在时自动退回 EVAL
+     *
+     * @param script 脚本 可通过 {@link RedisClient#script(String, Class)} 获取, 与阻塞客户端共用
+     * @param keys   KEYS
+     * @param args   ARGV 按字符串传入
+     * @return 结果, 脚本返回数组时每个元素为一项
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> eval(RedisScript<T> script, List<String> keys, List<String> args) {
+        RedisElementReader<T> resultReader = (RedisElementReader<T>) RedisElementReader.from(StringRedisSerializer.UTF_8);
+        return reactiveRedisTemplate.execute(script, keys, args, ARGS_WRITER, resultReader);
+    }
+
+    // ============================internal=============================
+
+    /**
+     * 写入成功后失效本地缓存, 失效会同步发布通知, 不能在 reactor 的 IO 线程上执行
+     */
+    private <R> Mono<R> invalidate(Mono<R> mono, String... keys) {
+        if (redisClient == null || !redisClient.isLocalCacheEnabled()) {
+            return mono;
+        }
+        return mono.publishOn(Schedulers.boundedElastic()).doOnSuccess(result -> redisClient.invalidate(keys));
+    }
+
+    private <R> Mono<R> invalidateFields(Mono<R> mono, String key, String... fields) {
+        if (redisClient == null || !redisClient.isLocalCacheEnabled()) {
+            return mono;
+        }
+        return mono.publishOn(Schedulers.boundedElastic()).doOnSuccess(result -> {
+            for (String field : fields) {
+                redisClient.invalidateField(key, field);
+            }
+        });
+    }
+}
@@ -0,0 +1,276 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.exception.RedisException;
+import com.cqmike.base.util.RedisClient.Jackson2JsonRedisSerializer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.data.redis.core.RedisOperations;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @program: common
+ * @description: redis 管道批量操作, 由 {@link RedisClient#pipeline(Consumer)} 一次性提交
+ * <p>
+ * 每个入队的操作返回一个 {@link Response}, 管道提交后通过 {@link Response#get()} 取得类型化的结果,
+ * 也可以直接使用 {@link RedisClient#pipeline(Consumer)} 返回的按入队顺序转换好的结果列表
+ * <pre>
+ *     RedisBatch batch = redisClient.batch();
+ *     RedisBatch.Response&lt;User&gt; user = batch.get("user:1", User.class);
+ *     batch.hset("user:index", "1", "a");
+ *     batch.expire("user:index", 60);
+ *     redisClient.pipeline(batch);
+ *     user.get();
+ * </pre>
+ * 只支持会返回结果的命令, 保证结果与操作一一对应
+ * @author: chen qi
+ * @create: 2020-12-12 14:20
+ **/
+public class RedisBatch {
+
+    private final List<Operation<?>> operations = new ArrayList<>();
+
+    /**
+     * 写入过的key与hash字段, 管道提交后用于近端缓存与热点key的失效
+     */
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+    private final Map<String, Set<String>> writtenFields = new LinkedHashMap<>();
+
+    RedisBatch() {
+    }
+
+    // ============================String=============================
+
+    public <T> Response<T> get(String key, Class<T> clazz) {
+        return add(ops -> ops.opsForValue().get(key), v -> Jackson2JsonRedisSerializer.deserialize(v, clazz));
+    }
+
+    public <T> Response<T> get(String key, TypeReference<T> type) {
+        return add(ops -> ops.opsForValue().get(key), v -> Jackson2JsonRedisSerializer.deserialize(v, type));
+    }
+
+    public Response<Boolean> set(String key, Object value) {
+        writtenKeys.add(key);
+        return add(ops -> ops.opsForValue().set(key, value), RedisBatch::toBoolean);
+    }
+
+    /**
+     * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     */
+    public Response<Boolean> setex(String key, Object value, int time) {
+        if (time > 0) {
+            writtenKeys.add(key);
+            return add(ops -> ops.opsForValue().set(key, value, time, TimeUnit.SECONDS), RedisBatch::toBoolean);
+        }
+        return set(key, value);
+    }
+
+    public Response<Long> incr(String key, long delta) {
+        writtenKeys.add(key);
+        return add(ops -> ops.opsForValue().increment(key, delta), RedisBatch::toLong);
+    }
+
+    // ============================common=============================
+
+    public Response<Long> del(String... keys) {
+        List<String> keyList = Arrays.asList(keys);
+        writtenKeys.addAll(keyList);
+        return add(ops -> ops.delete(keyList), RedisBatch::toLong);
+    }
+
+    /**
+     * @param time 时间(秒)
+     */
+    public Response<Boolean> expire(String key, int time) {
+        writtenKeys.add(key);
+        return add(ops -> ops.expire(key, time, TimeUnit.SECONDS), RedisBatch::toBoolean);
+    }
+
+    // ================================Map=================================
+
+    public Response<Boolean> hset(String key, String field, Object value) {
+        writtenFields.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(field);
+        return add(ops -> ops.opsForHash().put(key, field, value), RedisBatch::toBoolean);
+    }
+
+    public <T> Response<T> hget(String key, String field, Class<T> clazz) {
+        return add(ops -> ops.opsForHash().get(key, field), v -> Jackson2JsonRedisSerializer.deserialize(v, clazz));
+    }
+
+    public <T> Response<T> hget(String key, String field, TypeReference<T> type) {
+        return add(ops -> ops.opsForHash().get(key, field), v -> Jackson2JsonRedisSerializer.deserialize(v, type));
+    }
+
+    public Response<Long> hdel(String key, String... fields) {
+        writtenFields.computeIfAbsent(key, k -> new LinkedHashSet<>()).addAll(Arrays.asList(fields));
+        return add(ops -> ops.opsForHash().delete(key, (Object[]) fields), RedisBatch::toLong);
+    }
+
+    // ============================set=============================
+
+    @SafeVarargs
+    public final <T> Response<Long> sadd(String key, T... members) {
+        return add(ops -> ops.opsForSet().add(key, members), RedisBatch::toLong);
+    }
+
+    @SafeVarargs
+    public final <T> Response<Long> srem(String key, T... members) {
+        return add(ops -> ops.opsForSet().remove(key, members), RedisBatch::toLong);
+    }
+
+    public Response<Boolean> sismember(String key, Object member) {
+        return add(ops -> ops.opsForSet().isMember(key, member), RedisBatch::toBoolean);
+    }
+
+    public <T> Response<Set<T>> smembers(String key, Class<T> clazz) {
+        return add(ops -> ops.opsForSet().members(key), v -> {
+            if (v == null) return null;
+            Set<T> result = new HashSet<>();
+            ((Collection<?>) v).forEach(e -> result.add(Jackson2JsonRedisSerializer.deserialize(e, clazz)));
+            return result;
+        });
+    }
+
+    // ===============================list=================================
+
+    @SafeVarargs
+    public final <T> Response<Long> lpush(String key, T... values) {
+        return add(ops -> ops.opsForList().leftPushAll(key, values), RedisBatch::toLong);
+    }
+
+    @SafeVarargs
+    public final <T> Response<Long> rpush(String key, T... values) {
+        return add(ops -> ops.opsForList().rightPushAll(key, values), RedisBatch::toLong);
+    }
+
+    public <T> Response<List<T>> lrange(String key, int start, int stop, Class<T> clazz) {
+        return add(ops -> ops.opsForList().range(key, start, stop), v -> {
+            if (v == null) return null;
+            List<T> result = new ArrayList<>();
+            ((Collection<?>) v).forEach(e -> result.add(Jackson2JsonRedisSerializer.deserialize(e, clazz)));
+            return result;
+        });
+    }
+
+    // ============================internal=============================
+
+    boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    int size() {
+        return operations.size();
+    }
+
+    /**
+     * 在管道连接上依次执行所有操作
+     */
+    void apply(RedisOperations<String, Object> ops) {
+        for (Operation<?> operation : operations) {
+            operation.command.accept(ops);
+        }
+    }
+
+    /**
+     * 管道提交后回调写入过的key与hash字段, 整个key已失效的字段不再单独回调
+     */
+    void written(Consumer<String> keyConsumer, BiConsumer<String, String> fieldConsumer) {
+        writtenKeys.forEach(keyConsumer);
+        writtenFields.forEach((key, fields) -> {
+            if (!writtenKeys.contains(key)) {
+                fields.forEach(field -> fieldConsumer.accept(key, field));
+            }
+        });
+    }
+
+    /**
+     * 管道提交后按顺序回填结果
+     *
+     * @return 转换后的结果列表
+     */
+    List<Object> complete(List<Object> results) {
+        if (results == null || results.size() != operations.size()) {
+            throw new RedisException("pipeline result size mismatch, expect " + operations.size()
+                    + " but was " + (results == null ? 0 : results.size()));
+        }
+        List<Object> converted = new ArrayList<>(results.size());
+        for (int i = 0; i < operations.size(); i++) {
+            converted.add(operations.get(i).complete(results.get(i)));
+        }
+        return converted;
+    }
+
+    private <T> Response<T> add(Consumer<RedisOperations<String, Object>> command, Function<Object, T> converter) {
+        Operation<T> operation = new Operation<>(command, converter);
+        operations.add(operation);
+        return operation.response;
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue() > 0;
+        }
+        return value != null;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        return 0L;
+    }
+
+    private static class Operation<T> {
+
+        private final Consumer<RedisOperations<String, Object>> command;
+        private final Function<Object, T> converter;
+        private final Response<T> response = new Response<>();
+
+        private Operation(Consumer<RedisOperations<String, Object>> command, Function<Object, T> converter) {
+            this.command = command;
+            this.converter = converter;
+        }
+
+        private T complete(Object raw) {
+            T value = converter.apply(raw);
+            response.set(value);
+            return value;
+        }
+    }
+
+    /**
+     * 管道操作的结果, 管道提交前调用 {@link #get()} 会抛出异常
+     *
+     * @param <T> 结果类型
+     */
+    public static class Response<T> {
+
+        private T value;
+        private boolean done;
+
+        private void set(T value) {
+            this.value = value;
+            this.done = true;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public T get() {
+            if (!done) {
+                throw new RedisException("pipeline has not been executed yet");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.exception.RedisException;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @program: common
+ * @description: 基于 redis bitmap 的布隆过滤器, 由 {@link RedisClient#bfCreate(String, long, double)} 创建
+ * <p>
+ * 在读缓存/查库之前判断id是否可能存在, 不存在的id直接返回, 不再访问 redis value 和数据库
+ * <pre>
+ *     redisClient.bfCreate("user:bf", 1_000_000, 0.01);
+ *     redisClient.bfAdd("user:bf", user.getId());
+ *     if (!redisClient.bfMightContain("user:bf", id)) {
+ *         return Optional.empty();
+ *     }
+ * </pre>
+ * 值按 {@link String#valueOf(Object)} 后做 murmur3 哈希; 多个位的设置与读取在一个 lua 脚本中完成, 批量操作按
+ * {@link #CHUNK_SIZE} 分批, 每批一次往返
+ * <p>
+ * 开启本地镜像后, 本地命中的值直接返回存在; 本地未命中的值仍由 redis 确认 (其他节点可能已经加入), 确认存在后写回本地,
+ * 因此不会产生额外的误判
+ * @author: chen qi
+ * @create: 2020-12-23 10:05
+ **/
+public class RedisBloomFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisBloomFilter.class);
+
+    /**
+     * 每次脚本调用的最大值数量
+     */
+    public static final int CHUNK_SIZE = 1000;
+
+    /**
+     * redis bitmap 的最大位数 512MB
+     */
+    static final long MAX_BITS = 1L << 32;
+
+    static final String CONFIG_SUFFIX = ":config";
+
+    /**
+     * 镜像加载时每次 GETRANGE 的字节数
+     */
+    private static final int RANGE_SIZE = 1 << 20;
+
+    /**
+     * ARGV[1] 为哈希函数个数, 之后每 k 个位偏移对应一个值; 返回新加入的值的数量
+     */
+    private static final String ADD_SCRIPT = "local k = tonumber(ARGV[1])\n" +
+            "local added = 0\n" +
+            "for i = 2, #ARGV, k do\n" +
+            "    local new = 0\n" +
+            "    for j = i, i + k - 1 do\n" +
+            "        if redis.call('setbit', KEYS[1], ARGV[j], 1) == 0 then new = 1 end\n" +
+            "    end\n" +
+            "    added = added + new\n" +
+            "end\n" +
+            "return added";
+
+    /**
+     * 参数同 {@link #ADD_SCRIPT}; 按值的顺序返回 1/0
+     */
+    private static final String CONTAINS_SCRIPT = "local k = tonumber(ARGV[1])\n" +
+            "local result = {}\n" +
+            "for i = 2, #ARGV, k do\n" +
+            "    local present = 1\n" +
+            "    for j = i, i + k - 1 do\n" +
+            "        if redis.call('getbit', KEYS[1], ARGV[j]) == 0 then present = 0 break end\n" +
+            "    end\n" +
+            "    result[#result + 1] = present\n" +
+            "end\n" +
+            "return result";
+
+    /**
+     * 配置不存在时写入, 返回实际的配置
+     */
+    static final String CREATE_SCRIPT = "if redis.call('hsetnx', KEYS[1], 'bits', ARGV[1]) == 1 then\n" +
+            "    redis.call('hset', KEYS[1], 'hashes', ARGV[2])\n" +
+            "end\n" +
+            "return redis.call('hmget', KEYS[1], 'bits', 'hashes')";
+
+    private final RedisClient redisClient;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final String name;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * 本地镜像, 为空时不开启
+     */
+    private volatile AtomicLongArray mirror;
+
+    RedisBloomFilter(RedisClient redisClient, RedisTemplate<String, Object> redisTemplate,
+                     String name, long numBits, int numHashes) {
+        this.redisClient = redisClient;
+        this.redisTemplate = redisTemplate;
+        this.name = name;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * 加入一个值
+     *
+     * @param value 值
+     * @return 是否为新加入的值 (之前一定不存在)
+     */
+    public boolean add(Object value) {
+        return addAll(Collections.singletonList(value)) > 0;
+    }
+
+    /**
+     * 批量加入
+     *
+     * @param values 值
+     * @return 新加入的值的数量
+     */
+    public long addAll(Collection<?> values) {
+        long added = 0;
+        List<Object> list = new ArrayList<>(values);
+        for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+            List<Object> chunk = list.subList(from, Math.min(from + CHUNK_SIZE, list.size()));
+            Long result = redisClient.eval(redisClient.script(ADD_SCRIPT, Long.class),
+                    Collections.singletonList(name), arguments(chunk));
+            added += result == null ? 0 : result;
+        }
+        AtomicLongArray local = mirror;
+        if (local != null) {
+            for (Object value : list) {
+                for (long offset : offsets(value)) {
+                    setBit(local, offset);
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @param value 值
+     * @return false 时一定不存在; true 时可能存在
+     */
+    public boolean mightContain(Object value) {
+        return mightContainAll(Collections.singletonList(value)).get(0);
+    }
+
+    /**
+     * 批量判断
+     *
+     * @param values 值
+     * @return 与 values 一一对应
+     */
+    @SuppressWarnings("unchecked")
+    public List<Boolean> mightContainAll(List<?> values) {
+        Boolean[] result = new Boolean[values.size()];
+        AtomicLongArray local = mirror;
+        List<Integer> remote = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (local != null && containsLocal(local, values.get(i))) {
+                result[i] = Boolean.TRUE;
+            } else {
+                remote.add(i);
+            }
+        }
+        for (int from = 0; from < remote.size(); from += CHUNK_SIZE) {
+            List<Integer> indexes = remote.subList(from, Math.min(from + CHUNK_SIZE, remote.size()));
+            List<Object> chunk = new ArrayList<>(indexes.size());
+            indexes.forEach(i -> chunk.add(values.get(i)));
+            List<Long> present = redisClient.eval(redisClient.script(CONTAINS_SCRIPT, List.class),
+                    Collections.singletonList(name), arguments(chunk));
+            for (int i = 0; i < indexes.size(); i++) {
+                boolean contains = present != null && present.get(i) == 1L;
+                result[indexes.get(i)] = contains;
+                if (contains && local != null) {
+                    for (long offset : offsets(chunk.get(i))) {
+                        setBit(local, offset);
+                    }
+                }
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * 开启本地镜像并从 redis 加载, 镜像占用 numBits / 8 字节内存
+     */
+    public void enableMirror() {
+        if (mirror == null) {
+            refreshMirror();
+        }
+    }
+
+    public void disableMirror() {
+        mirror = null;
+    }
+
+    /**
+     * 从 redis 重新加载本地镜像, 按 {@link #RANGE_SIZE} 分段 GETRANGE
+     */
+    public void refreshMirror() {
+        AtomicLongArray local = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+        byte[] rawKey = name.getBytes(StandardCharsets.UTF_8);
+        long length = (numBits + 7) >>> 3;
+        try {
+            for (long from = 0; from < length; from += RANGE_SIZE) {
+                final long start = from;
+                final long end = Math.min(start + RANGE_SIZE, length) - 1;
+                byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.getRange(rawKey, start, end));
+                if (bytes == null || bytes.length == 0) {
+                    // bitmap 的长度取决于已设置的最大偏移, 后面的位都是 0
+                    break;
+                }
+                for (int i = 0; i < bytes.length; i++) {
+                    if (bytes[i] == 0) continue;
+                    for (int j = 0; j < 8; j++) {
+                        if ((bytes[i] & (0x80 >>> j)) != 0) {
+                            setBit(local, ((start + i) << 3) + j);
+                        }
+                    }
+                }
+                if (bytes.length < end - start + 1) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("refreshMirror: name={}", name, e);
+            throw new RedisException(e);
+        }
+        this.mirror = local;
+    }
+
+    public boolean isMirrorEnabled() {
+        return mirror != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    // ============================internal=============================
+
+    /**
+     * 位数 m = -n * ln(p) / (ln2)^2
+     */
+    static long optimalNumOfBits(long expectedInsertions, double fpp) {
+        long bits = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        return Math.min(Math.max(bits, 64), MAX_BITS);
+    }
+
+    /**
+     * 哈希函数个数 k = m / n * ln2
+     */
+    static int optimalNumOfHashFunctions(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / Math.max(expectedInsertions, 1) * Math.log(2)));
+    }
+
+    /**
+     * 双重哈希 h1 + i * h2 计算 k 个位偏移
+     */
+    private long[] offsets(Object value) {
+        byte[] hash = Hashing.murmur3_128()
+                .hashString(String.valueOf(value), StandardCharsets.UTF_8).asBytes();
+        long h1 = toLong(hash, 0);
+        long h2 = toLong(hash, 8);
+        long[] offsets = new long[numHashes];
+        long combined = h1;
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += h2;
+        }
+        return offsets;
+    }
+
+    private static long toLong(byte[] bytes, int from) {
+        long value = 0;
+        for (int i = from + 7; i >= from; i--) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private List<String> arguments(List<?> values) {
+        List<String> args = new ArrayList<>(values.size() * numHashes + 1);
+        args.add(String.valueOf(numHashes));
+        for (Object value : values) {
+            for (long offset : offsets(value)) {
+                args.add(String.valueOf(offset));
+            }
+        }
+        return args;
+    }
+
+    private boolean containsLocal(AtomicLongArray local, Object value) {
+        for (long offset : offsets(value)) {
+            if ((local.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setBit(AtomicLongArray local, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long current;
+        do {
+            current = local.get(index);
+        } while ((current & mask) == 0 && !local.compareAndSet(index, current, current | mask));
+    }
+}
@@ -4,21 +4,63 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.cqmike.base.exception.RedisException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.api.async.RedisStreamAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.models.stream.PendingMessage;
+import io.lettuce.core.models.stream.PendingParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @program: common
@@ -32,11 +74,68 @@ public class RedisClient {
 
     private final RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * 本地近端缓存, 为空时不开启
+     */
+    private NearCache nearCache;
+
+    /**
+     * 热点key探测, 为空时不开启
+     */
+    private HotKeyDetector hotKeyDetector;
+
+    private static final String SCRIPT_SEPARATOR = "\n";
+
+    /**
+     * 已注册的 lua 脚本
+     */
+    private final ConcurrentMap<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+
+    private final AsyncRedisClient asyncRedisClient;
+
+    /**
+     * 已创建或加载的布隆过滤器
+     */
+    private final ConcurrentMap<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
     public RedisClient(RedisTemplate<String, Object> redisTemplate) {
         this.redisTemplate = redisTemplate;
+        this.asyncRedisClient = new AsyncRedisClient(this, redisTemplate);
+    }
+
+    /**
+     * 基于 lettuce 异步命令的非阻塞批量操作
+     *
+     * @return async client
+     */
+    public AsyncRedisClient async() {
+        return asyncRedisClient;
+    }
+
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    public HotKeyDetector getHotKeyDetector() {
+        return hotKeyDetector;
     }
     // =============================common============================
 
+    /**
+     * SCAN 所有匹配的key并一次性返回
+     * <p>key数量很大时会占用大量内存, 使用 {@link #scanStream(String, int)} 或 {@link #scanBatches(String, int, Consumer)}</p>
+     *
+     * @param keyPattern 匹配模式
+     * @return keys
+     */
     public Set<String> scan(String keyPattern) {
         return redisTemplate.execute((RedisCallback<Set<String>>) connection -> {
             Set<String> keysTmp = new HashSet<>();
@@ -55,6 +154,134 @@ public class RedisClient {
     }
 
 
+    /**
+     * 默认的 SCAN COUNT 提示
+     */
+    public static final int DEFAULT_SCAN_COUNT = 1000;
+
+    /**
+     * 惰性的 SCAN 遍历, 不会一次性把所有key加载到内存
+     * <p>返回的 Stream 持有 redis 连接, 必须关闭, 推荐 try-with-resources</p>
+     * <code>
+     * try (Stream&lt;String&gt; keys = redisClient.scanStream("user:*", 500)) { ... }
+     * </code>
+     *
+     * @param keyPattern 匹配模式
+     * @param count      SCAN COUNT 提示
+     * @return key stream
+     */
+    public Stream<String> scanStream(String keyPattern, int count) {
+        ScanOptions options = ScanOptions.scanOptions().match(keyPattern).count(count).build();
+        Cursor<byte[]> cursor = redisTemplate.executeWithStickyConnection(connection -> connection.scan(options));
+        if (cursor == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.NONNULL), false)
+                .map(key -> new String(key, StandardCharsets.UTF_8))
+                .onClose(() -> {
+                    try {
+                        cursor.close();
+                    } catch (Exception e) {
+                        log.error("scanStream close: keyPattern={}", keyPattern, e);
+                    }
+                });
+    }
+
+    /**
+     * 按批次遍历匹配的key
+     *
+     * @param keyPattern 匹配模式
+     * @param batchSize  每批的数量, 同时作为 SCAN COUNT 提示
+     * @param consumer   每批key的回调
+     * @return 遍历到的key总数
+     */
+    public long scanBatches(String keyPattern, int batchSize, Consumer<List<String>> consumer) {
+        if (batchSize <= 0) {
+            throw new RedisException("batchSize must be greater than 0");
+        }
+        long total = 0;
+        try (Stream<String> keys = scanStream(keyPattern, batchSize)) {
+            Iterator<String> iterator = keys.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    total += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+                total += batch.size();
+            }
+        } catch (RedisException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("scanBatches: keyPattern={}", keyPattern, e);
+            throw new RedisException(e);
+        }
+        return total;
+    }
+
+    /**
+     * 删除所有匹配的key, 每批使用一次管道 UNLINK
+     *
+     * @param keyPattern 匹配模式
+     * @param batchSize  每批的数量
+     * @return 删除的key数量
+     */
+    public long scanAndDelete(String keyPattern, int batchSize) {
+        LongAdder deleted = new LongAdder();
+        scanBatches(keyPattern, batchSize, keys -> {
+            byte[][] rawKeys = rawKeys(keys);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.unlink(rawKeys);
+                return null;
+            });
+            results.forEach(r -> deleted.add(r instanceof Number ? ((Number) r).longValue() : 0L));
+            invalidate(keys.toArray(new String[0]));
+        });
+        return deleted.sum();
+    }
+
+    /**
+     * 对所有匹配的key设置过期时间, 每批使用一次管道 EXPIRE
+     *
+     * @param keyPattern 匹配模式
+     * @param time       时间(秒)
+     * @param batchSize  每批的数量
+     * @return 设置成功的key数量
+     */
+    public long scanAndExpire(String keyPattern, int time, int batchSize) {
+        LongAdder expired = new LongAdder();
+        scanBatches(keyPattern, batchSize, keys -> {
+            byte[][] rawKeys = rawKeys(keys);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[] rawKey : rawKeys) {
+                    connection.expire(rawKey, time);
+                }
+                return null;
+            });
+            results.forEach(r -> {
+                if (Boolean.TRUE.equals(r)) {
+                    expired.increment();
+                }
+            });
+            invalidate(keys.toArray(new String[0]));
+        });
+        return expired.sum();
+    }
+
+    private static byte[][] rawKeys(Collection<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            rawKeys[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        return rawKeys;
+    }
+
     public boolean hasKey(String key) {
         try {
             return Optional.ofNullable(redisTemplate.hasKey(key)).orElse(Boolean.FALSE);
@@ -65,23 +292,138 @@ public class RedisClient {
     }
 
 
+    /**
+     * 基于 SCAN 查询匹配的key, 不使用阻塞的 KEYS 命令
+     * <p>扫描完所有匹配的key后返回, 不限制数量与耗时</p>
+     *
+     * @param key 匹配模式
+     * @return keys
+     * @see #keys(String, int, long)
+     */
     public Set<String> keys(String key) {
+        return scanKeys(key, Integer.MAX_VALUE, Long.MAX_VALUE).getKeys();
+    }
+
+    /**
+     * 基于 SCAN 查询匹配的key, 不使用阻塞的 KEYS 命令
+     * <p>集群模式下并行扫描所有 master 节点; 达到数量上限或超时后停止扫描, 返回已扫描到的key,
+     * 此时 {@link KeysResult#isTruncated()} 为 true, 结果不完整</p>
+     *
+     * @param key     匹配模式
+     * @param limit   返回的最大数量
+     * @param timeout 超时时间(毫秒)
+     * @return keys 与是否被截断
+     */
+    public KeysResult keys(String key, int limit, long timeout) {
+        long now = System.currentTimeMillis();
+        return scanKeys(key, limit, timeout >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout);
+    }
+
+    private KeysResult scanKeys(String key, int limit, long deadline) {
         try {
-            return redisTemplate.keys(key);
+            return redisTemplate.execute((RedisCallback<KeysResult>) connection -> {
+                // 连接可能被指标代理包装, 按接口判断
+                if (connection instanceof RedisClusterConnection
+                        && connection.getNativeConnection() instanceof RedisAdvancedClusterAsyncCommands) {
+                    return clusterKeys((RedisClusterConnection) connection, key, limit, deadline);
+                }
+                Set<String> keys = new HashSet<>();
+                boolean truncated = false;
+                try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(key).count(DEFAULT_SCAN_COUNT).build())) {
+                    while (cursor.hasNext()) {
+                        if (keys.size() >= limit || System.currentTimeMillis() >= deadline) {
+                            truncated = true;
+                            break;
+                        }
+                        keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    throw new RedisException(e);
+                }
+                if (truncated) {
+                    log.warn("keys truncated: key={}, limit={}, found={}", key, limit, keys.size());
+                }
+                return new KeysResult(keys, truncated);
+            });
+        } catch (RedisException e) {
+            throw e;
         } catch (Exception e) {
             log.error("keys: key={}", key, e);
             throw new RedisException(e);
         }
     }
 
+    /**
+     * 集群模式下在每个 master 节点上并行 SCAN
+     */
+    @SuppressWarnings("unchecked")
+    private KeysResult clusterKeys(RedisClusterConnection connection, String pattern, int limit, long deadline) {
+        RedisAdvancedClusterAsyncCommands<byte[], byte[]> commands =
+                (RedisAdvancedClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+        ScanArgs args = ScanArgs.Builder.matches(pattern).limit(DEFAULT_SCAN_COUNT);
+        Set<String> keys = ConcurrentHashMap.newKeySet();
+        AtomicBoolean truncated = new AtomicBoolean();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (RedisClusterNode node : connection.clusterGetNodes()) {
+            if (node.isMaster()) {
+                futures.add(scanNode(commands.getConnection(node.getId()), ScanCursor.INITIAL, args, keys, limit, deadline, truncated));
+            }
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            truncated.set(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException(e);
+        } catch (ExecutionException e) {
+            throw new RedisException(e.getCause());
+        }
+        Set<String> result = new HashSet<>(keys);
+        if (result.size() > limit) {
+            truncated.set(true);
+            result = result.stream().limit(limit).collect(Collectors.toSet());
+        }
+        if (truncated.get()) {
+            log.warn("keys truncated: key={}, limit={}, found={}", pattern, limit, result.size());
+        }
+        return new KeysResult(result, truncated.get());
+    }
+
+    private CompletableFuture<Void> scanNode(RedisClusterAsyncCommands<byte[], byte[]> node, ScanCursor cursor, ScanArgs args,
+                                             Set<String> keys, int limit, long deadline, AtomicBoolean truncated) {
+        return node.scan(cursor, args).toCompletableFuture().thenCompose(result -> {
+            List<byte[]> page = result.getKeys();
+            for (int i = 0; i < page.size(); i++) {
+                if (keys.size() >= limit) {
+                    truncated.set(true);
+                    break;
+                }
+                keys.add(new String(page.get(i), StandardCharsets.UTF_8));
+            }
+            if (result.isFinished()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (keys.size() >= limit || System.currentTimeMillis() >= deadline) {
+                truncated.set(true);
+                return CompletableFuture.completedFuture(null);
+            }
+            return scanNode(node, result, args, keys, limit, deadline, truncated);
+        });
+    }
+
 
     public boolean del(String... key) {
         if (key != null && key.length > 0) {
+            boolean deleted;
             if (key.length == 1) {
-                return Optional.ofNullable(redisTemplate.delete(key[0])).orElse(Boolean.FALSE);
+                deleted = Optional.ofNullable(redisTemplate.delete(key[0])).orElse(Boolean.FALSE);
             } else {
-                return Optional.ofNullable(redisTemplate.delete(CollectionUtils.arrayToList(key))).orElse(0L) > 0;
+                deleted = Optional.ofNullable(redisTemplate.delete(CollectionUtils.arrayToList(key))).orElse(0L) > 0;
             }
+            invalidate(key);
+            return deleted;
         }
         return false;
     }
@@ -98,6 +440,8 @@ public class RedisClient {
         try {
             if (time > 0) {
                 redisTemplate.expire(key, time, TimeUnit.SECONDS);
+                // 本地缓存的过期时间按加载时的 PTTL 计算, 修改过期时间后需要重新加载
+                invalidate(key);
             }
             return true;
         } catch (Exception e) {
@@ -109,6 +453,7 @@ public class RedisClient {
 
     public void rename(String key, String newKey) {
         redisTemplate.rename(key, newKey);
+        invalidate(key, newKey);
     }
 
 
@@ -118,7 +463,9 @@ public class RedisClient {
 
 
     public long append(String key, String value) {
-        return Optional.ofNullable(redisTemplate.opsForValue().append(key, value)).orElse(0);
+        long length = Optional.ofNullable(redisTemplate.opsForValue().append(key, value)).orElse(0);
+        invalidate(key);
+        return length;
     }
 
 
@@ -132,18 +479,15 @@ public class RedisClient {
      */
 
     public <T> T get(String key, Class<T> clazz) {
-        Object value = redisTemplate.opsForValue().get(key);
+        Object value = getValue(key);
         if (value == null) {
             return null;
         }
-        if (Objects.equals(value.getClass(), clazz)) {
-            return clazz.cast(value);
-        }
         return Jackson2JsonRedisSerializer.deserialize(value, clazz);
     }
 
     public <T> T get(String key, TypeReference<T> type) {
-        Object value = redisTemplate.opsForValue().get(key);
+        Object value = getValue(key);
         if (value == null) {
             return null;
         }
@@ -165,6 +509,7 @@ public class RedisClient {
             log.error("set: key = {}, value = {}", key, value, e);
             throw new RedisException(e);
         }
+        invalidate(key);
     }
 
     /**
@@ -182,16 +527,18 @@ public class RedisClient {
                 redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
             } else {
                 set(key, value);
+                return;
             }
         } catch (Exception e) {
             log.error("setex: key = {}, value = {}", key, value, e);
             throw new RedisException(e);
         }
+        invalidate(key);
     }
 
 
     public long incr(String key) {
-        return Optional.ofNullable(redisTemplate.opsForValue().increment(key, 1)).orElse(0L);
+        return incr(key, 1);
     }
 
     /**
@@ -206,12 +553,14 @@ public class RedisClient {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return Optional.ofNullable(redisTemplate.opsForValue().increment(key, delta)).orElse(0L);
+        long value = Optional.ofNullable(redisTemplate.opsForValue().increment(key, delta)).orElse(0L);
+        invalidate(key);
+        return value;
     }
 
 
     public long decr(String key) {
-        return Optional.ofNullable(redisTemplate.opsForValue().increment(key, -1)).orElse(0L);
+        return decr(key, 1);
     }
 
     /**
@@ -226,12 +575,15 @@ public class RedisClient {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return Optional.ofNullable(redisTemplate.opsForValue().increment(key, -delta)).orElse(0L);
+        long value = Optional.ofNullable(redisTemplate.opsForValue().increment(key, -delta)).orElse(0L);
+        invalidate(key);
+        return value;
     }
 
 
     public <T> T getSet(String key, T value) {
         Object oldValue = redisTemplate.opsForValue().getAndSet(key, value);
+        invalidate(key);
         if (oldValue == null) {
             return null;
         }
@@ -249,6 +601,7 @@ public class RedisClient {
             kvMap.put(keysValues[i], keysValues[i + 1]);
         }
         redisTemplate.opsForValue().multiSet(kvMap);
+        invalidate(kvMap.keySet().toArray(new String[0]));
         return null;
     }
 
@@ -257,16 +610,73 @@ public class RedisClient {
         if (keys == null || values == null || keys.length != values.length) {
             throw new RedisException("wrong number of arguments for MSET; keys = " + keys + "values = " + values);
         }
-        Map<String, Object> kvMap = new HashMap<>();
-        for (int i = 0; i < keys.length; i++) {
-            kvMap.put(keys[i], values[i]);
+        // 同步写入使用 redisTemplate, 集群模式下按 slot 分组, 每组再分批 MSET
+        for (List<Integer> chunk : AsyncRedisClient.chunks(keys, AsyncRedisClient.DEFAULT_CHUNK_SIZE, isClusterAware())) {
+            Map<String, Object> kvMap = new LinkedHashMap<>();
+            for (Integer index : chunk) {
+                kvMap.put(keys[index], values[index]);
+            }
+            redisTemplate.opsForValue().multiSet(kvMap);
         }
-        redisTemplate.opsForValue().multiSet(kvMap);
+        invalidate(keys);
+    }
+
+    /**
+     * 同步读取使用 redisTemplate, 集群模式下按 slot 分组, 每组再分批 MGET, 结果按 keys 的顺序返回
+     */
+    private List<Object> multiGet(String[] keys) {
+        Object[] values = new Object[keys.length];
+        for (List<Integer> chunk : AsyncRedisClient.chunks(keys, AsyncRedisClient.DEFAULT_CHUNK_SIZE, isClusterAware())) {
+            List<String> chunkKeys = new ArrayList<>(chunk.size());
+            for (Integer index : chunk) {
+                chunkKeys.add(keys[index]);
+            }
+            List<Object> chunkValues = redisTemplate.opsForValue().multiGet(chunkKeys);
+            if (chunkValues == null) {
+                continue;
+            }
+            for (int i = 0; i < chunk.size() && i < chunkValues.size(); i++) {
+                values[chunk.get(i)] = chunkValues.get(i);
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    private boolean isClusterAware() {
+        RedisConnectionFactory connectionFactory = redisTemplate.getRequiredConnectionFactory();
+        return connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+    }
+
+    // ============================cluster=============================
+
+    /**
+     * 计算key的 hash slot, 有 hash tag 时只计算 {} 中的部分
+     *
+     * @param key 键
+     * @return slot
+     */
+    public static int slot(String key) {
+        return ClusterSlotHashUtil.calculateSlot(key);
+    }
+
+    /**
+     * 给key加上 hash tag, 相同 tag 的key在集群中位于同一个 slot, 可以一起执行多key命令
+     * <code>
+     * withHashTag("user:1", "profile") = "{user:1}:profile"
+     * </code>
+     *
+     * @param tag hash tag
+     * @param key 键
+     * @return 带 hash tag 的key
+     */
+    public static String withHashTag(String tag, String key) {
+        return "{" + tag + "}" + StrUtil.COLON + key;
     }
 
 
     public <T> Map<String, T> mget(String[] keys, Class<T> clazz) {
-        List<Object> stringValues = redisTemplate.opsForValue().multiGet(Arrays.asList(keys));
+        List<Object> stringValues = multiGet(keys);
         if (stringValues == null) {
             return null;
         }
@@ -280,7 +690,7 @@ public class RedisClient {
     }
 
     public <T> Map<String, T> mget(String[] keys, TypeReference<T> type) {
-        List<Object> stringValues = redisTemplate.opsForValue().multiGet(Arrays.asList(keys));
+        List<Object> stringValues = multiGet(keys);
         if (stringValues == null) {
             return null;
         }
@@ -309,11 +719,12 @@ public class RedisClient {
             log.error("hset: key={}, field={}, value={} -- {}", key, field, value, e);
             throw new RedisException(e);
         }
+        invalidateField(key, field);
     }
 
 
     public <T> T hget(String key, String item, Class<T> clazz) {
-        Object value = redisTemplate.opsForHash().get(key, item);
+        Object value = getHashValue(key, item);
         if (value == null) {
             return null;
         }
@@ -321,7 +732,7 @@ public class RedisClient {
     }
 
     public <T> T hget(String key, String item, TypeReference<T> type) {
-        Object value = redisTemplate.opsForHash().get(key, item);
+        Object value = getHashValue(key, item);
         if (value == null) {
             return null;
         }
@@ -378,6 +789,62 @@ public class RedisClient {
         return values;
     }
 
+    /**
+     * 基于 HSCAN 惰性遍历hash, 不会一次性把整个hash加载到内存
+     * <p>返回的 Stream 持有 redis 连接, 必须关闭, 推荐 try-with-resources</p>
+     *
+     * @param key       键
+     * @param pattern   字段匹配模式, 为空时匹配全部
+     * @param batchSize HSCAN COUNT 提示
+     * @param clazz     值类型
+     * @return entry stream
+     */
+    public <T> Stream<Map.Entry<String, T>> hscanStream(String key, String pattern, int batchSize, Class<T> clazz) {
+        ScanOptions.ScanOptionsBuilder builder = ScanOptions.scanOptions().count(batchSize);
+        if (StrUtil.isNotEmpty(pattern)) {
+            builder.match(pattern);
+        }
+        Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(key, builder.build());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.NONNULL), false)
+                .map(e -> (Map.Entry<String, T>) new AbstractMap.SimpleImmutableEntry<>(e.getKey().toString(),
+                        Jackson2JsonRedisSerializer.deserialize(e.getValue(), clazz)))
+                .onClose(() -> {
+                    try {
+                        cursor.close();
+                    } catch (Exception e) {
+                        log.error("hscanStream close: key={}", key, e);
+                    }
+                });
+    }
+
+    /**
+     * 基于 HSCAN 逐条处理hash中的字段
+     *
+     * @param key       键
+     * @param pattern   字段匹配模式, 为空时匹配全部
+     * @param batchSize HSCAN COUNT 提示
+     * @param clazz     值类型
+     * @param consumer  字段与值的回调
+     * @return 处理的字段数量
+     */
+    public <T> long hscan(String key, String pattern, int batchSize, Class<T> clazz, BiConsumer<String, T> consumer) {
+        long count = 0;
+        try (Stream<Map.Entry<String, T>> entries = hscanStream(key, pattern, batchSize, clazz)) {
+            Iterator<Map.Entry<String, T>> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, T> entry = iterator.next();
+                consumer.accept(entry.getKey(), entry.getValue());
+                count++;
+            }
+        } catch (RedisException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("hscan: key={}, pattern={}", key, pattern, e);
+            throw new RedisException(e);
+        }
+        return count;
+    }
+
     /**
      * 获取hashKey对应的所有键值
      *
@@ -422,6 +889,7 @@ public class RedisClient {
 
     public boolean hdel(String key, String field) {
         Long delete = redisTemplate.opsForHash().delete(key, field);
+        invalidateField(key, field);
         return delete > 0;
     }
 
@@ -435,6 +903,7 @@ public class RedisClient {
 
     /**
      * 根据key获取Set中的所有值
+     * <p>smile 序列化不写入类名, 元素为 Map/List 等对象树, 需要具体类型时使用 {@link #smembers(String, Class)}</p>
      *
      * @param key 键
      * @return
@@ -554,6 +1023,218 @@ public class RedisClient {
         return Optional.ofNullable(redisTemplate.opsForSet().size(key)).orElse(0L);
     }
 
+    // ============================zset=============================
+
+    /**
+     * 弹出分数最小的最多 ARGV[1] 个成员, 兼容不支持 ZPOPMIN 的 redis
+     */
+    private static final String ZPOPMIN_SCRIPT = "local values = redis.call('zrange', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n" +
+            "if #values > 0 then redis.call('zremrangebyrank', KEYS[1], 0, #values - 1) end\n" +
+            "return values";
+
+    /**
+     * 弹出分数最大的最多 ARGV[1] 个成员, 按分数从大到小返回
+     */
+    private static final String ZPOPMAX_SCRIPT = "local values = redis.call('zrevrange', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n" +
+            "if #values > 0 then redis.call('zremrangebyrank', KEYS[1], -#values, -1) end\n" +
+            "return values";
+
+    public boolean zadd(String key, Object member, double score) {
+        return Optional.ofNullable(redisTemplate.opsForZSet().add(key, member, score)).orElse(Boolean.FALSE);
+    }
+
+    /**
+     * 批量 ZADD, 一次往返
+     *
+     * @param members 成员 -> 分数
+     * @return 新加入的成员数量
+     */
+    public <T> long zadd(String key, Map<T, Double> members) {
+        if (CollectionUtils.isEmpty(members)) {
+            return 0;
+        }
+        Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+        members.forEach((member, score) -> tuples.add(new DefaultTypedTuple<>(member, score)));
+        return Optional.ofNullable(redisTemplate.opsForZSet().add(key, tuples)).orElse(0L);
+    }
+
+    /**
+     * @return 增加后的分数
+     */
+    public double zincrby(String key, Object member, double delta) {
+        return Optional.ofNullable(redisTemplate.opsForZSet().incrementScore(key, member, delta)).orElse(0D);
+    }
+
+    /**
+     * 批量 ZINCRBY, 通过 pipeline 一次往返
+     *
+     * @param deltas 成员 -> 增量
+     * @return 增加后的分数, 与 deltas 的迭代顺序一致
+     */
+    public <T> List<Double> zincrby(String key, Map<T, Double> deltas) {
+        if (CollectionUtils.isEmpty(deltas)) {
+            return Collections.emptyList();
+        }
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ZSetOperations<String, Object> ops = (ZSetOperations<String, Object>) operations.opsForZSet();
+                deltas.forEach((member, delta) -> ops.incrementScore(key, member, delta));
+                return null;
+            }
+        });
+        List<Double> scores = new ArrayList<>(results.size());
+        results.forEach(r -> scores.add(r instanceof Number ? ((Number) r).doubleValue() : null));
+        return scores;
+    }
+
+    public Double zscore(String key, Object member) {
+        return redisTemplate.opsForZSet().score(key, member);
+    }
+
+    /**
+     * 批量 ZSCORE, 通过 pipeline 一次往返
+     *
+     * @return 成员 -> 分数, 不存在的成员不会出现在结果中
+     */
+    public <T> Map<T, Double> zscore(String key, Collection<T> members) {
+        if (CollectionUtils.isEmpty(members)) {
+            return Collections.emptyMap();
+        }
+        List<T> list = new ArrayList<>(members);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ZSetOperations<String, Object> ops = (ZSetOperations<String, Object>) operations.opsForZSet();
+                list.forEach(member -> ops.score(key, member));
+                return null;
+            }
+        });
+        Map<T, Double> scores = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            Object score = results.get(i);
+            if (score instanceof Number) {
+                scores.put(list.get(i), ((Number) score).doubleValue());
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return 按分数从小到大的排名, 从0开始; 不存在时为 null
+     */
+    public Long zrank(String key, Object member) {
+        return redisTemplate.opsForZSet().rank(key, member);
+    }
+
+    /**
+     * @return 按分数从大到小的排名, 从0开始; 不存在时为 null
+     */
+    public Long zrevrank(String key, Object member) {
+        return redisTemplate.opsForZSet().reverseRank(key, member);
+    }
+
+    public long zrem(String key, Object... members) {
+        if (members == null || members.length == 0) {
+            return 0;
+        }
+        return Optional.ofNullable(redisTemplate.opsForZSet().remove(key, members)).orElse(0L);
+    }
+
+    public long zcard(String key) {
+        return Optional.ofNullable(redisTemplate.opsForZSet().zCard(key)).orElse(0L);
+    }
+
+    public long zcount(String key, double min, double max) {
+        return Optional.ofNullable(redisTemplate.opsForZSet().count(key, min, max)).orElse(0L);
+    }
+
+    /**
+     * 按排名范围获取, 分数从小到大
+     */
+    public <T> List<T> zrange(String key, long start, long end, Class<T> clazz) {
+        return toList(redisTemplate.opsForZSet().range(key, start, end), clazz);
+    }
+
+    /**
+     * 按排名范围获取, 分数从大到小
+     */
+    public <T> List<T> zrevrange(String key, long start, long end, Class<T> clazz) {
+        return toList(redisTemplate.opsForZSet().reverseRange(key, start, end), clazz);
+    }
+
+    /**
+     * 按分数范围获取, 分数从小到大
+     */
+    public <T> List<T> zrangeByScore(String key, double min, double max, Class<T> clazz) {
+        return toList(redisTemplate.opsForZSet().rangeByScore(key, min, max), clazz);
+    }
+
+    /**
+     * 按分数范围分页获取, 分数从小到大
+     */
+    public <T> List<T> zrangeByScore(String key, double min, double max, long offset, long count, Class<T> clazz) {
+        return toList(redisTemplate.opsForZSet().rangeByScore(key, min, max, offset, count), clazz);
+    }
+
+    /**
+     * 按排名范围获取成员与分数, 分数从小到大
+     *
+     * @return 有序的 成员 -> 分数
+     */
+    public <T> LinkedHashMap<T, Double> zrangeWithScores(String key, long start, long end, Class<T> clazz) {
+        return toScoreMap(redisTemplate.opsForZSet().rangeWithScores(key, start, end), clazz);
+    }
+
+    /**
+     * 按排名范围获取成员与分数, 分数从大到小, 用于排行榜
+     *
+     * @return 有序的 成员 -> 分数
+     */
+    public <T> LinkedHashMap<T, Double> zrevrangeWithScores(String key, long start, long end, Class<T> clazz) {
+        return toScoreMap(redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end), clazz);
+    }
+
+    /**
+     * 原子地弹出分数最小的最多 count 个成员
+     *
+     * @return 按分数从小到大
+     */
+    public <T> List<T> zpopmin(String key, int count, Class<T> clazz) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        return evalValues(ZPOPMIN_SCRIPT, key, String.valueOf(count), clazz);
+    }
+
+    /**
+     * 原子地弹出分数最大的最多 count 个成员
+     *
+     * @return 按分数从大到小
+     */
+    public <T> List<T> zpopmax(String key, int count, Class<T> clazz) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        return evalValues(ZPOPMAX_SCRIPT, key, String.valueOf(count), clazz);
+    }
+
+    private static <T> List<T> toList(Set<Object> values, Class<T> clazz) {
+        if (values == null) return Collections.emptyList();
+        List<T> result = new ArrayList<>(values.size());
+        values.forEach(e -> result.add(Jackson2JsonRedisSerializer.deserialize(e, clazz)));
+        return result;
+    }
+
+    private static <T> LinkedHashMap<T, Double> toScoreMap(Set<ZSetOperations.TypedTuple<Object>> tuples, Class<T> clazz) {
+        LinkedHashMap<T, Double> result = new LinkedHashMap<>();
+        if (tuples == null) return result;
+        tuples.forEach(tuple -> result.put(Jackson2JsonRedisSerializer.deserialize(tuple.getValue(), clazz), tuple.getScore()));
+        return result;
+    }
+
     // ===============================list=================================
 
 
@@ -610,32 +1291,721 @@ public class RedisClient {
         return Optional.ofNullable(redisTemplate.opsForList().size(key)).orElse(0L);
     }
 
+    /**
+     * 弹出列表头部最多 ARGV[1] 个元素
+     */
+    private static final String LPOP_BATCH_SCRIPT = "local values = redis.call('lrange', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n" +
+            "if #values > 0 then redis.call('ltrim', KEYS[1], #values, -1) end\n" +
+            "return values";
+
+    /**
+     * 弹出列表尾部最多 ARGV[1] 个元素, 按弹出顺序返回
+     */
+    private static final String RPOP_BATCH_SCRIPT = "local values = redis.call('lrange', KEYS[1], -tonumber(ARGV[1]), -1)\n" +
+            "if #values > 0 then redis.call('ltrim', KEYS[1], 0, -#values - 1) end\n" +
+            "local result = {}\n" +
+            "for i = #values, 1, -1 do result[#result + 1] = values[i] end\n" +
+            "return result";
+
+    /**
+     * BLPOP 列表为空时阻塞等待, 阻塞命令使用独立连接, 不占用共享连接
+     *
+     * @param timeout 超时时间, redis 按秒计算, 不足1秒按1秒
+     * @return 超时返回 null
+     */
+    public <T> T blpop(String key, long timeout, TimeUnit unit, Class<T> clazz) {
+        Object value = redisTemplate.opsForList().leftPop(key, blockingTimeout(timeout, unit), TimeUnit.SECONDS);
+        return Jackson2JsonRedisSerializer.deserialize(value, clazz);
+    }
+
+    /**
+     * BRPOP
+     *
+     * @see #blpop(String, long, TimeUnit, Class)
+     */
+    public <T> T brpop(String key, long timeout, TimeUnit unit, Class<T> clazz) {
+        Object value = redisTemplate.opsForList().rightPop(key, blockingTimeout(timeout, unit), TimeUnit.SECONDS);
+        return Jackson2JsonRedisSerializer.deserialize(value, clazz);
+    }
+
+    /**
+     * RPOPLPUSH 弹出 source 尾部元素并放入 destination 头部, 处理完成后从 destination 中 lrem, 宕机时消息不丢失
+     */
+    public <T> T rpoplpush(String source, String destination, Class<T> clazz) {
+        Object value = redisTemplate.opsForList().rightPopAndLeftPush(source, destination);
+        return Jackson2JsonRedisSerializer.deserialize(value, clazz);
+    }
+
+    /**
+     * BRPOPLPUSH 阻塞版本的 {@link #rpoplpush(String, String, Class)}, 等同于 BLMOVE source destination RIGHT LEFT,
+     * 兼容 6.2 以下的 redis
+     *
+     * @see #blpop(String, long, TimeUnit, Class)
+     */
+    public <T> T brpoplpush(String source, String destination, long timeout, TimeUnit unit, Class<T> clazz) {
+        Object value = redisTemplate.opsForList().rightPopAndLeftPush(source, destination,
+                blockingTimeout(timeout, unit), TimeUnit.SECONDS);
+        return Jackson2JsonRedisSerializer.deserialize(value, clazz);
+    }
+
+    /**
+     * 原子地弹出列表头部最多 count 个元素, 一次往返, 兼容不支持 LPOP count 的 redis
+     *
+     * @return 弹出的元素, 列表为空时为空集合
+     */
+    public <T> List<T> lpopBatch(String key, int count, Class<T> clazz) {
+        return popBatch(LPOP_BATCH_SCRIPT, key, count, clazz);
+    }
+
+    /**
+     * 原子地弹出列表尾部最多 count 个元素, 按弹出顺序返回
+     *
+     * @see #lpopBatch(String, int, Class)
+     */
+    public <T> List<T> rpopBatch(String key, int count, Class<T> clazz) {
+        return popBatch(RPOP_BATCH_SCRIPT, key, count, clazz);
+    }
+
+    private <T> List<T> popBatch(String script, String key, int count, Class<T> clazz) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        return evalValues(script, key, String.valueOf(count), clazz);
+    }
+
+    /**
+     * 阻塞命令的超时时间按秒向上取整, 0 表示永久阻塞, 因此至少为1秒
+     */
+    private static long blockingTimeout(long timeout, TimeUnit unit) {
+        long millis = unit.toMillis(timeout);
+        return Math.max((millis + 999) / 1000, 1);
+    }
+
+
+    // ===============================stream=================================
+
+    /**
+     * xclaim 每次 XPENDING 读取的最少条数
+     */
+    private static final int XPENDING_PAGE_SIZE = 100;
+
+    /**
+     * 创建消费组, 从头开始消费; stream 不存在时一并创建 (MKSTREAM), 返回 -1 表示消费组已存在
+     */
+    private static final String XGROUP_CREATE_SCRIPT = "local result = redis.pcall('xgroup', 'create', KEYS[1], ARGV[1], ARGV[2], 'MKSTREAM')\n" +
+            "if type(result) == 'table' and result.err then\n" +
+            "    if string.find(result.err, 'BUSYGROUP') then return -1 end\n" +
+            "    return result\n" +
+            "end\n" +
+            "return 1";
+
+    /**
+     * XADD
+     *
+     * @param key    stream
+     * @param fields 字段, 值按 hash value 序列化
+     * @return 消息id
+     */
+    public String xadd(String key, Map<String, ?> fields) {
+        RecordId id = redisTemplate.opsForStream().add(key, fields);
+        return id == null ? null : id.getValue();
+    }
+
+    /**
+     * XTRIM 保留最新的 count 条消息
+     *
+     * @return 删除的消息数量
+     */
+    public long xtrim(String key, long count) {
+        return Optional.ofNullable(redisTemplate.opsForStream().trim(key, count)).orElse(0L);
+    }
+
+    /**
+     * 创建消费组, 从 stream 的第一条消息开始消费
+     *
+     * @return 是否新创建, 已存在时返回 false
+     */
+    public boolean xgroupCreate(String key, String group) {
+        Long result = eval(script(XGROUP_CREATE_SCRIPT, Long.class), Collections.singletonList(key),
+                Arrays.asList(group, "0"));
+        return result != null && result > 0;
+    }
+
+    /**
+     * XREADGROUP 读取未分配给任何消费者的新消息
+     *
+     * @param key         stream
+     * @param group       消费组
+     * @param consumer    消费者
+     * @param count       最多读取的数量
+     * @param blockMillis 没有消息时的阻塞时间(毫秒), 小于等于0时不阻塞
+     * @param clazz       字段值的类型
+     * @return 消息, 没有消息时为空集合
+     */
+    public <T> List<MapRecord<String, String, T>> xreadgroup(String key, String group, String consumer, int count,
+                                                            long blockMillis, Class<T> clazz) {
+        StreamReadOptions options = StreamReadOptions.empty().count(count);
+        if (blockMillis > 0) {
+            options = options.block(Duration.ofMillis(blockMillis));
+        }
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                org.springframework.data.redis.connection.stream.Consumer.from(group, consumer),
+                options, StreamOffset.create(key, ReadOffset.lastConsumed()));
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MapRecord<String, String, T>> result = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, T> body = new LinkedHashMap<>();
+            record.getValue().forEach((field, value) ->
+                    body.put(String.valueOf(field), Jackson2JsonRedisSerializer.deserialize(value, clazz)));
+            result.add(StreamRecords.<String, String, T>mapBacked(body).withStreamKey(key).withId(record.getId()));
+        }
+        return result;
+    }
+
+    /**
+     * XACK
+     *
+     * @return 确认的消息数量
+     */
+    public long xack(String key, String group, String... ids) {
+        if (ids == null || ids.length == 0) {
+            return 0;
+        }
+        return Optional.ofNullable(redisTemplate.opsForStream().acknowledge(key, group, ids)).orElse(0L);
+    }
+
+    /**
+     * XPENDING + XCLAIM 接管空闲超过 minIdleMillis 的待确认消息, 用于处理消费者宕机后遗留的消息
+     * <p>不限制投递次数, 见 {@link #xclaim(String, String, String, long, int, long, String, Class)}</p>
+     */
+    public <T> List<MapRecord<String, String, T>> xclaim(String key, String group, String consumer, long minIdleMillis,
+                                                        int count, Class<T> clazz) {
+        return xclaim(key, group, consumer, minIdleMillis, count, 0, null, clazz);
+    }
+
+    /**
+     * XPENDING + XCLAIM 接管空闲超过 minIdleMillis 的待确认消息, 用于处理消费者宕机后遗留的消息
+     * <p>spring-data-redis 2.2 不支持 XCLAIM, 在回调中使用 lettuce 原生命令</p>
+     * <p>投递次数达到 maxDeliveries 的消息按原始字节 XADD 到死信 stream 后 XACK, 不再返回; 已被删除 (body 为空) 的消息直接 XACK.
+     * XADD 与 XACK 之间宕机时死信可能重复</p>
+     *
+     * @param key           stream
+     * @param group         消费组
+     * @param consumer      接管消息的消费者
+     * @param minIdleMillis 最小空闲时间(毫秒)
+     * @param count         最多接管的数量
+     * @param maxDeliveries 最大投递次数, 小于等于0时不限制
+     * @param deadLetterKey 死信 stream, 为空时超过投递次数的消息只记录日志后确认
+     * @param clazz         字段值的类型
+     * @return 接管的消息, 不包含转入死信和 body 为空的消息
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<MapRecord<String, String, T>> xclaim(String key, String group, String consumer, long minIdleMillis,
+                                                        int count, long maxDeliveries, String deadLetterKey,
+                                                        Class<T> clazz) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawGroup = group.getBytes(StandardCharsets.UTF_8);
+        List<StreamMessage<byte[], byte[]>> messages;
+        try {
+            messages = redisTemplate.execute((RedisCallback<List<StreamMessage<byte[], byte[]>>>) connection -> {
+                Object nativeConnection = connection.getNativeConnection();
+                if (!(nativeConnection instanceof RedisStreamAsyncCommands)) {
+                    throw new RedisException("xclaim requires a lettuce connection");
+                }
+                RedisStreamAsyncCommands<byte[], byte[]> commands = (RedisStreamAsyncCommands<byte[], byte[]>) nativeConnection;
+                // 前面的待确认消息可能属于仍在处理的消费者, 从上一页最后一个id开始继续翻页, 直到找到 count 条空闲消息
+                Map<String, Long> deliveries = new LinkedHashMap<>();
+                int pageSize = Math.max(count, XPENDING_PAGE_SIZE);
+                Range<String> range = Range.unbounded();
+                String lastId = null;
+                while (deliveries.size() < count) {
+                    List<PendingMessage> page = PendingParser.parseRange(
+                            commands.xpending(rawKey, rawGroup, range, Limit.from(pageSize)).toCompletableFuture().join());
+                    for (PendingMessage message : page) {
+                        if (message.getId().equals(lastId)) {
+                            continue;
+                        }
+                        if (message.getMsSinceLastDelivery() >= minIdleMillis && deliveries.size() < count) {
+                            deliveries.put(message.getId(), message.getRedeliveryCount());
+                        }
+                    }
+                    if (page.size() < pageSize) {
+                        break;
+                    }
+                    lastId = page.get(page.size() - 1).getId();
+                    // redis 6.2 之前 XPENDING 不支持开区间, 从 lastId 开始并跳过它
+                    range = Range.from(Range.Boundary.including(lastId), Range.Boundary.unbounded());
+                }
+                if (deliveries.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                List<StreamMessage<byte[], byte[]>> claimed = commands.xclaim(rawKey,
+                        io.lettuce.core.Consumer.from(rawGroup, consumer.getBytes(StandardCharsets.UTF_8)),
+                        minIdleMillis, deliveries.keySet().toArray(new String[0])).toCompletableFuture().join();
+                List<StreamMessage<byte[], byte[]>> live = new ArrayList<>(claimed.size());
+                List<String> discarded = new ArrayList<>();
+                for (StreamMessage<byte[], byte[]> message : claimed) {
+                    if (message.getBody() == null || message.getBody().isEmpty()) {
+                        discarded.add(message.getId());
+                        continue;
+                    }
+                    long delivered = deliveries.getOrDefault(message.getId(), 0L);
+                    if (maxDeliveries <= 0 || delivered < maxDeliveries) {
+                        live.add(message);
+                        continue;
+                    }
+                    if (deadLetterKey == null) {
+                        log.error("xclaim: 消息超过最大投递次数已丢弃, key={}, id={}, deliveries={}", key, message.getId(), delivered);
+                    } else {
+                        String deadId = commands.xadd(deadLetterKey.getBytes(StandardCharsets.UTF_8), message.getBody())
+                                .toCompletableFuture().join();
+                        log.warn("xclaim: 消息超过最大投递次数转入死信, key={}, id={}, deliveries={}, deadLetterKey={}, deadId={}",
+                                key, message.getId(), delivered, deadLetterKey, deadId);
+                    }
+                    discarded.add(message.getId());
+                }
+                if (!discarded.isEmpty()) {
+                    commands.xack(rawKey, rawGroup, discarded.toArray(new String[0])).toCompletableFuture().join();
+                }
+                return live;
+            });
+        } catch (RedisException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("xclaim: key={}, group={}", key, group, e);
+            throw new RedisException(e);
+        }
+        if (messages == null || messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<?> serializer = redisTemplate.getHashValueSerializer();
+        List<MapRecord<String, String, T>> result = new ArrayList<>(messages.size());
+        for (StreamMessage<byte[], byte[]> message : messages) {
+            Map<String, T> body = new LinkedHashMap<>();
+            message.getBody().forEach((field, value) -> body.put(new String(field, StandardCharsets.UTF_8),
+                    Jackson2JsonRedisSerializer.deserialize(serializer.deserialize(value), clazz)));
+            result.add(StreamRecords.<String, String, T>mapBacked(body).withStreamKey(key).withId(RecordId.of(message.getId())));
+        }
+        return result;
+    }
+
+    // ===============================script=================================
+
+    public Object eval(String script) {
+        return eval(script, String.class, Collections.emptyList(), Collections.emptyList());
+    }
 
-    public Object eval(String script) {
-        // 执行 lua 脚本
-        DefaultRedisScript<String> redisScript = new DefaultRedisScript<>(script, String.class);
-        return redisTemplate.execute(redisScript, Collections.emptyList());
-    }
-
 
     public Object eval(String script, int keyCount, String... params) {
         if (keyCount > params.length) {
             throw new RedisException("keyCount > params");
         }
-
-        // 执行 lua 脚本
-        DefaultRedisScript<String> redisScript = new DefaultRedisScript<>(script, String.class);
-        List<String> keys = new ArrayList<>(keyCount);
-        keys.addAll(Arrays.asList(params).subList(0, keyCount));
+        List<String> keys = new ArrayList<>(Arrays.asList(params).subList(0, keyCount));
         List<String> args = new ArrayList<>(Arrays.asList(params).subList(keyCount, params.length));
-        return redisTemplate.execute(redisScript, keys, args);
+        return eval(script, String.class, keys, args);
     }
 
 
     public Object eval(String script, List<String> keys, List<String> args) {
-        // 执行 lua 脚本
-        DefaultRedisScript<String> redisScript = new DefaultRedisScript<>(script, String.class);
-        return redisTemplate.execute(redisScript, keys, args);
+        return eval(script, String.class, keys, args);
+    }
+
+    /**
+     * 执行 lua 脚本, 脚本按源码缓存, 使用 EVALSHA 执行, 服务端不存在时自动退回 EVAL
+     *
+     * @param script     脚本
+     * @param resultType 结果类型 Long/Boolean/List/String, 为空时忽略结果
+     * @param keys       KEYS
+     * @param args       ARGV 按字符串传入
+     * @return 结果
+     */
+    public <T> T eval(String script, Class<T> resultType, List<String> keys, List<String> args) {
+        return eval(script(script, resultType), keys, args);
+    }
+
+    /**
+     * 执行 lua 脚本, 使用 EVALSHA 执行, 服务端不存在时自动退回 EVAL
+     *
+     * @param script 脚本 通过 {@link #script(String, Class)} 获取
+     * @param keys   KEYS
+     * @param args   ARGV 按字符串传入
+     * @return 结果
+     */
+    public <T> T eval(RedisScript<T> script, List<String> keys, List<String> args) {
+        try {
+            return redisTemplate.execute(script, StringRedisSerializer.UTF_8, RedisClient.<T>resultSerializer(),
+                    keys, args.toArray());
+        } catch (Exception e) {
+            log.error("eval: sha1={}, keys={}", script.getSha1(), keys, e);
+            throw new RedisException(e);
+        }
+    }
+
+    /**
+     * 通过 pipeline 一次往返执行多次同一个脚本, 使用 EVALSHA, 服务端不存在脚本时整批退回 EVAL
+     * <p>集群模式下每次执行的 keys 仍需在同一个 slot</p>
+     *
+     * @param script 脚本 结果类型为 Long/Boolean
+     * @param keys   每次执行的 KEYS
+     * @param args   每次执行的 ARGV, 与 keys 一一对应
+     * @return 每次执行的结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> evalPipelined(RedisScript<T> script, List<List<String>> keys, List<List<String>> args) {
+        if (keys.size() != args.size()) {
+            throw new RedisException("keys and args must have the same size");
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+        try {
+            return (List<T>) redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    connection.evalSha(script.getSha1(), returnType, keys.get(i).size(), keysAndArgs(keys.get(i), args.get(i)));
+                }
+                return null;
+            }, StringRedisSerializer.UTF_8);
+        } catch (Exception e) {
+            if (!isNoScriptError(e)) {
+                log.error("evalPipelined: sha1={}, size={}", script.getSha1(), keys.size(), e);
+                throw new RedisException(e);
+            }
+        }
+        byte[] body = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        try {
+            return (List<T>) redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    connection.eval(body, returnType, keys.get(i).size(), keysAndArgs(keys.get(i), args.get(i)));
+                }
+                return null;
+            }, StringRedisSerializer.UTF_8);
+        } catch (Exception e) {
+            log.error("evalPipelined: sha1={}, size={}", script.getSha1(), keys.size(), e);
+            throw new RedisException(e);
+        }
+    }
+
+    private static byte[][] keysAndArgs(List<String> keys, List<String> args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        for (String arg : args) {
+            keysAndArgs[i++] = arg.getBytes(StandardCharsets.UTF_8);
+        }
+        return keysAndArgs;
+    }
+
+    private static boolean isNoScriptError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 注册脚本, SHA1 只计算一次; 相同的源码与结果类型返回同一个实例
+     *
+     * @param script     脚本
+     * @param resultType 结果类型
+     * @return script
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> script(String script, Class<T> resultType) {
+        String cacheKey = (resultType == null ? "" : resultType.getName()) + SCRIPT_SEPARATOR + script;
+        return (RedisScript<T>) scripts.computeIfAbsent(cacheKey, k -> new DefaultRedisScript<>(script, resultType));
+    }
+
+    /**
+     * 将已注册的脚本通过 SCRIPT LOAD 预加载到服务端, 失败时只记录日志, 执行时会退回 EVAL
+     */
+    public void loadScripts() {
+        Collection<RedisScript<?>> registered = new ArrayList<>(scripts.values());
+        if (registered.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (RedisScript<?> script : registered) {
+                    connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            log.info("redis 脚本预加载完成, 数量: {}", registered.size());
+        } catch (Exception e) {
+            log.warn("redis 脚本预加载失败", e);
+        }
+    }
+
+    /**
+     * 执行返回元素列表的脚本, 元素按 value 序列化器读取
+     * <p>以 MULTI 类型执行, 每个元素的原始字节单独反序列化, 与 {@link #evalPipelined(RedisScript, List, List)} 一致</p>
+     */
+    @SuppressWarnings("rawtypes")
+    private <T> List<T> evalValues(String script, String key, String arg, Class<T> clazz) {
+        RedisScript<List> redisScript = script(script, List.class);
+        byte[][] keysAndArgs = keysAndArgs(Collections.singletonList(key), Collections.singletonList(arg));
+        List<Object> values;
+        try {
+            values = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+                try {
+                    return connection.evalSha(redisScript.getSha1(), ReturnType.MULTI, 1, keysAndArgs);
+                } catch (Exception e) {
+                    if (!isNoScriptError(e)) {
+                        throw e;
+                    }
+                    return connection.eval(redisScript.getScriptAsString().getBytes(StandardCharsets.UTF_8),
+                            ReturnType.MULTI, 1, keysAndArgs);
+                }
+            });
+        } catch (Exception e) {
+            log.error("evalValues: key={}", key, e);
+            throw new RedisException(e);
+        }
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<?> serializer = redisTemplate.getValueSerializer();
+        List<T> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            result.add(Jackson2JsonRedisSerializer.deserialize(serializer.deserialize((byte[]) value), clazz));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<T> resultSerializer() {
+        // 整数/布尔/状态类型的结果不经过序列化器, 字符串结果按 utf-8 读取
+        return (RedisSerializer<T>) StringRedisSerializer.UTF_8;
+    }
+
+    // ===============================bloom filter=================================
+
+    /**
+     * 创建布隆过滤器, 配置保存在 name:config 中; 已存在时沿用已有的配置
+     *
+     * @param name               bitmap 的 key
+     * @param expectedInsertions 预计插入数量
+     * @param fpp                期望的误判率 (0, 1)
+     * @return bloom filter
+     */
+    public RedisBloomFilter bfCreate(String name, long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new RedisException("expectedInsertions must be greater than 0 and fpp must be in (0, 1)");
+        }
+        long numBits = RedisBloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+        int numHashes = RedisBloomFilter.optimalNumOfHashFunctions(expectedInsertions, numBits);
+        List<?> config = eval(script(RedisBloomFilter.CREATE_SCRIPT, List.class),
+                Collections.singletonList(name + RedisBloomFilter.CONFIG_SUFFIX),
+                Arrays.asList(String.valueOf(numBits), String.valueOf(numHashes)));
+        RedisBloomFilter filter = toBloomFilter(name, config);
+        if (filter.getNumBits() != numBits || filter.getNumHashes() != numHashes) {
+            log.info("bloom filter {} already exists: bits={}, hashes={}", name, filter.getNumBits(), filter.getNumHashes());
+        }
+        RedisBloomFilter existing = bloomFilters.putIfAbsent(name, filter);
+        return existing == null ? filter : existing;
+    }
+
+    /**
+     * 获取已创建的布隆过滤器, 本节点未创建时从 redis 加载配置
+     *
+     * @param name bitmap 的 key
+     * @return bloom filter
+     */
+    public RedisBloomFilter bloomFilter(String name) {
+        return bloomFilters.computeIfAbsent(name, k -> {
+            // 配置由脚本按字符串写入, 不经过 value 序列化器
+            List<byte[]> config = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.hMGet(
+                    (k + RedisBloomFilter.CONFIG_SUFFIX).getBytes(StandardCharsets.UTF_8),
+                    "bits".getBytes(StandardCharsets.UTF_8), "hashes".getBytes(StandardCharsets.UTF_8)));
+            return toBloomFilter(k, config == null ? null : config.stream()
+                    .map(v -> v == null ? null : new String(v, StandardCharsets.UTF_8))
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    public boolean bfAdd(String name, Object value) {
+        return bloomFilter(name).add(value);
+    }
+
+    /**
+     * @return 新加入的值的数量
+     */
+    public long bfAddAll(String name, Collection<?> values) {
+        return bloomFilter(name).addAll(values);
+    }
+
+    /**
+     * @return false 时一定不存在; true 时可能存在
+     */
+    public boolean bfMightContain(String name, Object value) {
+        return bloomFilter(name).mightContain(value);
+    }
+
+    /**
+     * @return 与 values 一一对应
+     */
+    public List<Boolean> bfMightContainAll(String name, List<?> values) {
+        return bloomFilter(name).mightContainAll(values);
+    }
+
+    /**
+     * 删除布隆过滤器的 bitmap 与配置
+     */
+    public boolean bfDelete(String name) {
+        bloomFilters.remove(name);
+        return del(name, name + RedisBloomFilter.CONFIG_SUFFIX);
+    }
+
+    private RedisBloomFilter toBloomFilter(String name, List<?> config) {
+        if (config == null || config.size() < 2 || config.get(0) == null || config.get(1) == null) {
+            throw new RedisException("bloom filter not found: " + name);
+        }
+        long numBits = Long.parseLong(String.valueOf(config.get(0)));
+        int numHashes = Integer.parseInt(String.valueOf(config.get(1)));
+        return new RedisBloomFilter(this, redisTemplate, name, numBits, numHashes);
+    }
+
+    // ===============================local cache=================================
+
+    /**
+     * 本地缓存中保存的是序列化后的字节, 每次读取都反序列化出新的对象
+     */
+    private Object getValue(String key) {
+        if (nearCache != null && nearCache.accept(key)) {
+            return nearCache.get(key);
+        }
+        if (hotKeyDetector != null) {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            return redisTemplate.getValueSerializer().deserialize(hotKeyDetector.get(key,
+                    () -> redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey))));
+        }
+        return redisTemplate.opsForValue().get(key);
+    }
+
+    private Object getHashValue(String key, String field) {
+        if (nearCache != null && nearCache.accept(key)) {
+            return nearCache.hget(key, field);
+        }
+        if (hotKeyDetector != null) {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            byte[] rawField = field.getBytes(StandardCharsets.UTF_8);
+            return redisTemplate.getHashValueSerializer().deserialize(hotKeyDetector.hget(key, field,
+                    () -> redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(rawKey, rawField))));
+        }
+        return redisTemplate.opsForHash().get(key, field);
+    }
+
+    /**
+     * @return 是否开启了近端缓存或热点key本地缓存, 写入后需要失效
+     */
+    boolean isLocalCacheEnabled() {
+        return nearCache != null || hotKeyDetector != null;
+    }
+
+    void invalidate(String... keys) {
+        if (nearCache == null && hotKeyDetector == null) {
+            return;
+        }
+        for (String key : keys) {
+            if (nearCache != null && nearCache.accept(key)) {
+                nearCache.invalidate(key);
+            }
+            if (hotKeyDetector != null) {
+                hotKeyDetector.invalidate(key);
+            }
+        }
+    }
+
+    void invalidateField(String key, String field) {
+        if (nearCache != null && nearCache.accept(key)) {
+            nearCache.invalidate(key, field);
+        }
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(key, field);
+        }
+    }
+
+    // ===============================pipeline=================================
+
+    /**
+     * 创建一个空的批量操作, 配合 {@link #pipeline(RedisBatch)} 使用
+     *
+     * @return batch
+     */
+    public RedisBatch batch() {
+        return new RedisBatch();
+    }
+
+    /**
+     * 管道批量执行, 所有操作在一次网络往返中提交
+     *
+     * @param consumer 批量操作入队
+     * @return 按入队顺序转换后的结果
+     */
+    public List<Object> pipeline(Consumer<RedisBatch> consumer) {
+        RedisBatch batch = new RedisBatch();
+        consumer.accept(batch);
+        return pipeline(batch);
+    }
+
+    /**
+     * 管道批量执行, 执行后可通过 {@link RedisBatch.Response#get()} 获取每个操作的结果
+     *
+     * @param batch 批量操作
+     * @return 按入队顺序转换后的结果
+     */
+    public List<Object> pipeline(RedisBatch batch) {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    batch.apply((RedisOperations<String, Object>) operations);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("pipeline: size={}", batch.size(), e);
+            throw new RedisException(e);
+        }
+        batch.written(this::invalidate, this::invalidateField);
+        return batch.complete(results);
+    }
+
+    /**
+     * {@link #keys(String, int, long)} 的结果
+     */
+    public static final class KeysResult {
+
+        private final Set<String> keys;
+        private final boolean truncated;
+
+        private KeysResult(Set<String> keys, boolean truncated) {
+            this.keys = keys;
+            this.truncated = truncated;
+        }
+
+        public Set<String> getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return 是否因达到数量上限或超时而提前停止, 为 true 时还有未返回的匹配key
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
     }
 
     public static class Jackson2JsonRedisSerializer<T> implements RedisSerializer<T> {
@@ -667,26 +2037,32 @@ public class RedisClient {
             return JsonUtils.parse(str, clazz);
         }
 
+        /**
+         * 将 redisTemplate 已经反序列化出的值转换为目标类型
+         * <p>已是目标类型直接返回, Map/List 等对象树通过 convertValue 直接转换, 不再重新序列化成字符串.
+         * 直接返回的对象不能来自共享的缓存, 近端缓存与热点key缓存保存字节, 每次读取都是新反序列化的对象</p>
+         */
         public static <T> T deserialize(Object value, Class<T> clazz) {
             if (value == null) {
                 return null;
             }
+            if (clazz.isInstance(value)) {
+                return clazz.cast(value);
+            }
             if (value instanceof String) {
                 return JsonUtils.parse(value.toString(), clazz);
             }
-            String strValue = JsonUtils.toJson(value);
-            return JsonUtils.parse(strValue, clazz);
+            return JsonUtils.convert(value, clazz);
         }
 
         public static <T> T deserialize(Object value, TypeReference<T> type) {
             if (value == null) {
                 return null;
             }
-            if (value instanceof String) {
+            if (value instanceof String && !String.class.equals(type.getType())) {
                 return JsonUtils.parse(value.toString(), type);
             }
-            String strValue = JsonUtils.toJson(value);
-            return JsonUtils.parse(strValue, type);
+            return JsonUtils.convert(value, type);
         }
     }
 }
\ No newline at end of file
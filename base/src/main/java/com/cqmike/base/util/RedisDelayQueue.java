@@ -0,0 +1,159 @@
+package com.cqmike.base.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: 基于 zset 的延迟队列
+ * <p>
+ * 元素以到期时间为分数写入 {name}:delayed, 到期的元素由 lua 脚本批量原子地从 zset 移动到 {name}:ready 列表,
+ * 消费者对 ready 列表阻塞读取, 等待时间取到下一个元素的到期时间, 不需要逐个元素轮询;
+ * 每次阻塞最多 1 秒后重新移动, 等待期间新加入的更早到期的元素不会被延后到等待结束
+ * <pre>
+ *     RedisDelayQueue&lt;Job&gt; queue = new RedisDelayQueue&lt;&gt;(redisClient, "job", Job.class);
+ *     queue.offer(job, 30, TimeUnit.SECONDS);
+ *     Job due = queue.poll(5, TimeUnit.SECONDS);
+ * </pre>
+ * 两个key使用同一个 hash tag, 集群模式下在同一个 slot; 相同的元素会被 zset 去重, 元素中应包含唯一标识.
+ * 阻塞读取按秒计算, 到期时间的精度约为1秒
+ * @author: chen qi
+ * @create: 2020-12-24 15:20
+ **/
+public class RedisDelayQueue<T> {
+
+    /**
+     * 每次移动的最大元素数量
+     */
+    public static final int DEFAULT_TRANSFER_SIZE = 100;
+
+    /**
+     * 单次阻塞读取的最长时间(毫秒), 所有消费者都在阻塞时由它决定新到期元素的最大延迟
+     */
+    private static final long MAX_BLOCK_MILLIS = 1000;
+
+    /**
+     * 移动到期时间 &lt;= ARGV[1] 的最多 ARGV[2] 个元素; 返回 {移动数量, 下一个元素的到期时间 没有时为 -1}
+     */
+    private static final String TRANSFER_SCRIPT = "local items = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))\n" +
+            "if #items > 0 then\n" +
+            "    redis.call('zrem', KEYS[1], unpack(items))\n" +
+            "    redis.call('rpush', KEYS[2], unpack(items))\n" +
+            "end\n" +
+            "local head = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES')\n" +
+            "if #head == 0 then return {#items, -1} end\n" +
+            "return {#items, tonumber(head[2])}";
+
+    private final RedisClient redisClient;
+    private final String delayedKey;
+    private final String readyKey;
+    private final Class<T> clazz;
+    private final int transferSize;
+
+    public RedisDelayQueue(RedisClient redisClient, String name, Class<T> clazz) {
+        this(redisClient, name, clazz, DEFAULT_TRANSFER_SIZE);
+    }
+
+    public RedisDelayQueue(RedisClient redisClient, String name, Class<T> clazz, int transferSize) {
+        this.redisClient = redisClient;
+        this.delayedKey = RedisClient.withHashTag(name, "delayed");
+        this.readyKey = RedisClient.withHashTag(name, "ready");
+        this.clazz = clazz;
+        this.transferSize = transferSize;
+    }
+
+    /**
+     * 加入队列, delay 后可以被消费
+     */
+    public boolean offer(T item, long delay, TimeUnit unit) {
+        return redisClient.zadd(delayedKey, item, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    /**
+     * 取消尚未到期的元素
+     *
+     * @return 是否取消成功, 已到期或不存在时返回 false
+     */
+    public boolean cancel(T item) {
+        return redisClient.zrem(delayedKey, item) > 0;
+    }
+
+    /**
+     * 获取一个到期的元素, 没有时最多等待 timeout
+     *
+     * @return 超时返回 null
+     */
+    public T poll(long timeout, TimeUnit unit) {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (true) {
+            T item = redisClient.lpop(readyKey, clazz);
+            if (item != null) {
+                return item;
+            }
+            long[] result = transfer();
+            if (result[0] > 0) {
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                return null;
+            }
+            long wait = Math.min(remaining, MAX_BLOCK_MILLIS);
+            if (result[1] >= 0) {
+                wait = Math.min(wait, result[1] - now);
+            }
+            if (wait <= 0) {
+                continue;
+            }
+            item = redisClient.blpop(readyKey, wait, TimeUnit.MILLISECONDS, clazz);
+            if (item != null) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * 非阻塞地获取最多 max 个到期的元素
+     */
+    public List<T> drain(int max) {
+        List<T> items = new ArrayList<>(redisClient.lpopBatch(readyKey, max, clazz));
+        if (items.size() < max) {
+            transfer();
+            items.addAll(redisClient.lpopBatch(readyKey, max - items.size(), clazz));
+        }
+        return items;
+    }
+
+    /**
+     * 尚未到期的元素数量
+     */
+    public long delayedSize() {
+        return redisClient.zcard(delayedKey);
+    }
+
+    /**
+     * 已到期未消费的元素数量
+     */
+    public long readySize() {
+        return redisClient.llen(readyKey);
+    }
+
+    /**
+     * 将到期的元素移动到 ready 列表
+     *
+     * @return {移动数量, 下一个元素的到期时间 没有时为 -1}
+     */
+    @SuppressWarnings("unchecked")
+    private long[] transfer() {
+        List<Object> result = redisClient.eval(redisClient.script(TRANSFER_SCRIPT, List.class),
+                Arrays.asList(delayedKey, readyKey),
+                Arrays.asList(String.valueOf(System.currentTimeMillis()), String.valueOf(transferSize)));
+        if (result == null || result.size() < 2) {
+            return new long[]{0, -1};
+        }
+        return new long[]{((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue()};
+    }
+}
@@ -0,0 +1,81 @@
+package com.cqmike.base.util;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * @program: common
+ * @description: 分布式锁的释放通知
+ * <p>
+ * 释放锁的脚本向 channelPrefix + lockKey 发布消息, 每个节点只订阅一次 channelPrefix + "*",
+ * 收到消息后唤醒本节点上等待该锁的线程, 等待线程不需要固定间隔轮询
+ * @author: chen qi
+ * @create: 2020-12-26 09:40
+ **/
+public class RedisLockNotifier implements MessageListener {
+
+    public static final String DEFAULT_CHANNEL_PREFIX = "redis-lock:release:";
+
+    private final String channelPrefix;
+
+    /**
+     * lockKey -> 等待的线程
+     */
+    private final ConcurrentMap<String, Set<Semaphore>> waiters = new ConcurrentHashMap<>();
+
+    public RedisLockNotifier(String channelPrefix) {
+        this.channelPrefix = channelPrefix;
+    }
+
+    /**
+     * @return 锁释放时发布消息的 channel
+     */
+    public String channel(String lockKey) {
+        return channelPrefix + lockKey;
+    }
+
+    /**
+     * @return 订阅的 pattern
+     */
+    public String getPattern() {
+        return channelPrefix + "*";
+    }
+
+    /**
+     * 注册等待, 需要在第一次尝试获取锁之前注册, 避免错过通知
+     *
+     * @param lockKey 锁的key
+     * @return 收到释放通知时 release
+     */
+    public Semaphore register(String lockKey) {
+        Semaphore semaphore = new Semaphore(0);
+        waiters.compute(lockKey, (k, set) -> {
+            Set<Semaphore> result = set == null ? ConcurrentHashMap.newKeySet() : set;
+            result.add(semaphore);
+            return result;
+        });
+        return semaphore;
+    }
+
+    public void unregister(String lockKey, Semaphore semaphore) {
+        waiters.computeIfPresent(lockKey, (k, set) -> {
+            set.remove(semaphore);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String lockKey = new String(message.getBody(), StandardCharsets.UTF_8);
+        Set<Semaphore> set = waiters.get(lockKey);
+        if (set != null) {
+            set.forEach(Semaphore::release);
+        }
+    }
+}
@@ -9,6 +9,11 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * 用于Redis 分布式锁
@@ -23,32 +28,69 @@ public final class RedisLockUtil {
 
     public static final Long SUCCESS = 1L;
 
-    private final static String LOCK_LUA = "if redis.call('setnx', KEYS[1], ARGV[1]) == 1 then " +
-            "redis.call('expire', KEYS[1], ARGV[2]) return 1 else return 0 end";
+    /**
+     * 当前节点的标识, 与线程id组成可重入锁的持有者
+     */
+    public static final String NODE_ID = UUID.randomUUID().toString();
+
+    /**
+     * SET NX PX 一条命令完成加锁与过期时间的设置, 过期时间为毫秒
+     */
+    private final static String LOCK_LUA = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+            "return 1 else return 0 end";
 
+    /**
+     * 释放锁后向 ARGV[2] 发布释放通知, 唤醒其他节点上等待的线程
+     */
     private final static String LOCK_RELEASE_LUA = "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-            "return redis.call('del', KEYS[1]) else return 0 end";
+            "local result = redis.call('del', KEYS[1]) " +
+            "redis.call('publish', ARGV[2], KEYS[1]) " +
+            "return result else return 0 end";
 
     /**
-     * 锁的过期时间延长脚本
+     * 锁的过期时间延长脚本, 过期时间为毫秒
      */
     private final static String LOCK_EXPAND_LUA = "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-            "redis.call('expire', KEYS[1], ARGV[2]) return 1 else return 0 end";
+            "redis.call('pexpire', KEYS[1], ARGV[2]) return 1 else return 0 end";
 
 
+    /**
+     * 注册锁相关的脚本, 用于启动时预加载
+     *
+     * @param redisClient redisClient
+     */
+    public static void registerScripts(RedisClient redisClient) {
+        redisClient.script(LOCK_LUA, Long.class);
+        redisClient.script(LOCK_RELEASE_LUA, Long.class);
+        redisClient.script(LOCK_EXPAND_LUA, Long.class);
+    }
+
     /**
      * 获取分布式锁
      *
      * @param lockKey    锁的key
      * @param value      当前锁的值
-     * @param expireTime 过期时间
+     * @param expireTime 过期时间  秒
      * @return
      */
     public static boolean tryGetDistributedLock(RedisClient redisClient, String lockKey, String value, int expireTime) {
+        return tryGetDistributedLock(redisClient, lockKey, value, expireTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取分布式锁
+     *
+     * @param lockKey    锁的key
+     * @param value      当前锁的值
+     * @param expireTime 过期时间  按毫秒设置, 不足1毫秒按1毫秒
+     * @param unit       过期时间单位
+     * @return
+     */
+    public static boolean tryGetDistributedLock(RedisClient redisClient, String lockKey, String value, long expireTime, TimeUnit unit) {
 
-        List<String> values = Lists.newArrayList(value, String.valueOf(expireTime));
+        List<String> values = Lists.newArrayList(value, String.valueOf(toLeaseMillis(expireTime, unit)));
 
-        Object result = redisClient.eval(LOCK_LUA, Collections.singletonList(lockKey), values);
+        Long result = redisClient.eval(LOCK_LUA, Long.class, Collections.singletonList(lockKey), values);
         //判断是否成功
         return Objects.equals(SUCCESS, result);
     }
@@ -63,7 +105,8 @@ public final class RedisLockUtil {
      */
     public static boolean releaseDistributedLock(RedisClient redisClient, String lockKey, String value) {
         // 参数一：redisScript，参数二：key列表，参数三：arg（可多个）
-        Object result = redisClient.eval(LOCK_RELEASE_LUA, Collections.singletonList(lockKey), Collections.singletonList(value));
+        Long result = redisClient.eval(LOCK_RELEASE_LUA, Long.class, Collections.singletonList(lockKey),
+                Lists.newArrayList(value, channel(lockKey)));
         return Objects.equals(SUCCESS, result);
     }
 
@@ -72,20 +115,61 @@ public final class RedisLockUtil {
      *
      * @param lockKey  锁的key
      * @param value    当前锁的值
-     * @param lockTime 锁的过期延长时间
+     * @param lockTime 锁的过期延长时间  秒
      * @return
      */
     public static boolean expandLockTime(RedisClient redisClient, String lockKey, String value, int lockTime) {
+        return expandLockTime(redisClient, lockKey, value, lockTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 延长锁的超时时间
+     *
+     * @param lockKey  锁的key
+     * @param value    当前锁的值
+     * @param lockTime 锁的过期延长时间  按毫秒设置, 不足1毫秒按1毫秒
+     * @param unit     时间单位
+     * @return
+     */
+    public static boolean expandLockTime(RedisClient redisClient, String lockKey, String value, long lockTime, TimeUnit unit) {
         // 参数一：redisScript，参数二：key列表，参数三：arg（可多个）
-        Object result = redisClient.eval(LOCK_EXPAND_LUA, Collections.singletonList(lockKey), Lists.newArrayList(value, String.valueOf(lockTime)));
+        Long result = redisClient.eval(LOCK_EXPAND_LUA, Long.class, Collections.singletonList(lockKey),
+                Lists.newArrayList(value, String.valueOf(toLeaseMillis(lockTime, unit))));
         return Objects.equals(SUCCESS, result);
     }
 
+    /**
+     * 转换为毫秒的租期, 至少1毫秒
+     */
+    public static long toLeaseMillis(long time, TimeUnit unit) {
+        return Math.max(1, unit.toMillis(time));
+    }
+
 
+    /**
+     * 没有释放通知时的最大重试间隔
+     */
     private static final long SLEEP_TIME = 100;
 
+    /**
+     * 开启释放通知时的最大重试间隔, 仅在通知丢失或持有者宕机锁自然过期时生效
+     */
+    private static final long NOTIFIED_MAX_SLEEP_TIME = 1000;
+
+    private static final long MIN_SLEEP_TIME = 10;
+
+    /**
+     * 锁的释放通知, 为空时按退避间隔重试
+     */
+    private static volatile RedisLockNotifier notifier;
+
+    public static void setNotifier(RedisLockNotifier lockNotifier) {
+        notifier = lockNotifier;
+    }
+
     /**
      * 自定义获取锁的超时时间
+     * <p>开启释放通知时, 等待线程在锁释放后立即被唤醒; 否则按指数退避加随机抖动重试</p>
      *
      * @param lockKey             锁的key
      * @param value               当前锁的值
@@ -95,16 +179,80 @@ public final class RedisLockUtil {
      * @throws InterruptedException
      */
     public static boolean lockWithWaitTime(RedisClient redisClient, String lockKey, String value, int expireTime, long waitMilliSecondTime) throws InterruptedException {
-        while (waitMilliSecondTime >= 0) {
-            final boolean lock = tryGetDistributedLock(redisClient, lockKey, value, expireTime);
-            if (lock) {
-                return true;
+        return lockWithWaitTime(redisClient, lockKey, value, expireTime, TimeUnit.SECONDS, waitMilliSecondTime);
+    }
+
+    /**
+     * 自定义获取锁的超时时间, 锁的过期时间精确到毫秒
+     *
+     * @param lockKey             锁的key
+     * @param value               当前锁的值
+     * @param expireTime          过期时间
+     * @param unit                过期时间单位
+     * @param waitMilliSecondTime 等待时间  毫秒
+     * @return true -> 获取到锁
+     * @throws InterruptedException
+     * @see #lockWithWaitTime(RedisClient, String, String, int, long)
+     */
+    public static boolean lockWithWaitTime(RedisClient redisClient, String lockKey, String value, long expireTime, TimeUnit unit,
+                                           long waitMilliSecondTime) throws InterruptedException {
+        final long leaseMillis = toLeaseMillis(expireTime, unit);
+        return await(lockKey, waitMilliSecondTime,
+                () -> tryGetDistributedLock(redisClient, lockKey, value, leaseMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 重复尝试直到成功或超过等待时间, 至少尝试一次; 两次尝试之间等待锁的释放通知或退避间隔
+     *
+     * @param lockKey    锁的key, 用于接收释放通知
+     * @param waitMillis 等待时间  毫秒
+     * @param attempt    一次获取尝试
+     * @return true -> 获取成功
+     * @throws InterruptedException
+     */
+    static boolean await(String lockKey, long waitMillis, BooleanSupplier attempt) throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        final long deadline = waitMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + waitMillis;
+        final RedisLockNotifier lockNotifier = notifier;
+        final long maxSleepTime = lockNotifier == null ? SLEEP_TIME : NOTIFIED_MAX_SLEEP_TIME;
+        // 先注册再尝试获取, 避免错过两者之间的释放通知
+        final Semaphore released = lockNotifier == null ? null : lockNotifier.register(lockKey);
+        try {
+            for (int i = 0; ; i++) {
+                if (attempt.getAsBoolean()) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                long sleepTime = Math.min(remaining, backoff(i, maxSleepTime));
+                if (released != null) {
+                    released.tryAcquire(sleepTime, TimeUnit.MILLISECONDS);
+                    // 同一次释放可能唤醒多次, 只需要重新尝试一次
+                    released.drainPermits();
+                } else {
+                    Thread.sleep(sleepTime);
+                }
+            }
+        } finally {
+            if (released != null) {
+                lockNotifier.unregister(lockKey, released);
             }
-            waitMilliSecondTime -= SLEEP_TIME;
-            Thread.sleep(SLEEP_TIME);
         }
-        return false;
     }
 
+    /**
+     * 指数退避, 在 [backoff / 2, backoff] 之间随机, 避免等待线程同时重试
+     */
+    private static long backoff(int attempt, long maxSleepTime) {
+        long backoff = Math.min(maxSleepTime, MIN_SLEEP_TIME << Math.min(attempt, 16));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    static String channel(String lockKey) {
+        RedisLockNotifier lockNotifier = notifier;
+        return lockNotifier == null ? RedisLockNotifier.DEFAULT_CHANNEL_PREFIX + lockKey : lockNotifier.channel(lockKey);
+    }
 
 }
@@ -0,0 +1,200 @@
+package com.cqmike.base.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: 分布式锁的续期看门狗
+ * <p>
+ * 所有持有中的锁共用一个调度线程, 每个 tick 收集到达续期时间的锁, 通过 pipeline 一次往返全部续期;
+ * 锁在租期过去三分之一时续期, 续期失败 (锁已过期或被其他持有者获取) 后不再续期;
+ * 租期较短时提前到过期前两个 tick 续期; 小于两个 tick 的租期无法保证在过期前续期, 注册时输出警告,
+ * 需要调小 redis.client.lock.watchdog-tick 或加长租期
+ * <pre>
+ *     RedisLockWatchdog.Lease lease = watchdog.watch(lockKey, value, 30000);
+ *     try {
+ *         ...
+ *     } finally {
+ *         lease.cancel();
+ *         RedisLockUtil.releaseDistributedLock(redisClient, lockKey, value);
+ *     }
+ * </pre>
+ * @author: chen qi
+ * @create: 2020-12-26 15:30
+ **/
+public class RedisLockWatchdog {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisLockWatchdog.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    /**
+     * 锁的值不变时按毫秒延长过期时间
+     */
+    private static final String RENEW_LUA = "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+
+    private final RedisClient redisClient;
+    private final long tickMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    public RedisLockWatchdog(RedisClient redisClient) {
+        this(redisClient, DEFAULT_TICK_MILLIS);
+    }
+
+    public RedisLockWatchdog(RedisClient redisClient, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis 必须大于 0");
+        }
+        this.redisClient = redisClient;
+        this.tickMillis = tickMillis;
+        redisClient.script(RENEW_LUA, Long.class);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::renew, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 续期 SET key value 方式获取的锁
+     *
+     * @param lockKey     锁的key
+     * @param value       锁的值
+     * @param leaseMillis 租期(毫秒)
+     * @return 取消续期的句柄
+     */
+    public Lease watch(String lockKey, String value, long leaseMillis) {
+        return watch(redisClient.script(RENEW_LUA, Long.class), Collections.singletonList(lockKey),
+                Arrays.asList(value, String.valueOf(leaseMillis)), leaseMillis);
+    }
+
+    /**
+     * 使用自定义脚本续期, 脚本返回 1 表示续期成功
+     *
+     * @param script      续期脚本
+     * @param keys        KEYS 需要在同一个 slot
+     * @param args        ARGV
+     * @param leaseMillis 租期(毫秒)
+     * @return 取消续期的句柄
+     */
+    public Lease watch(RedisScript<Long> script, List<String> keys, List<String> args, long leaseMillis) {
+        if (leaseMillis < 2 * tickMillis) {
+            // 锁已经获取, 不在这里拒绝, 仍然每个 tick 尝试续期
+            log.warn("租期 {}ms 小于两个续期间隔 {}ms, 可能在续期前过期, keys: {}", leaseMillis, 2 * tickMillis, keys);
+        }
+        Lease lease = new Lease(script, keys, args, leaseMillis);
+        leases.add(lease);
+        return lease;
+    }
+
+    /**
+     * @return 调度间隔(毫秒), 租期不小于两倍间隔时才能保证在过期前续期
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 当前续期中的锁数量
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        leases.clear();
+    }
+
+    private void renew() {
+        long now = System.currentTimeMillis();
+        List<Lease> due = new ArrayList<>();
+        for (Lease lease : leases) {
+            if (now >= lease.nextRenewAt) {
+                due.add(lease);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        // 同一个脚本的续期合并为一次 pipeline
+        Set<RedisScript<Long>> scripts = Collections.newSetFromMap(new IdentityHashMap<>());
+        due.forEach(lease -> scripts.add(lease.script));
+        for (RedisScript<Long> script : scripts) {
+            List<Lease> batch = new ArrayList<>();
+            List<List<String>> keys = new ArrayList<>();
+            List<List<String>> args = new ArrayList<>();
+            for (Lease lease : due) {
+                if (lease.script == script) {
+                    batch.add(lease);
+                    keys.add(lease.keys);
+                    args.add(lease.args);
+                }
+            }
+            try {
+                List<Long> results = redisClient.evalPipelined(script, keys, args);
+                for (int i = 0; i < batch.size(); i++) {
+                    Lease lease = batch.get(i);
+                    if (Objects.equals(RedisLockUtil.SUCCESS, results.get(i))) {
+                        lease.nextRenewAt = now + lease.renewDelay;
+                    } else if (leases.remove(lease)) {
+                        log.warn("锁续期失败, 锁已过期或被其他持有者获取, keys: {}", lease.keys);
+                    }
+                }
+                log.debug("锁续期完成, 数量: {}", batch.size());
+            } catch (Exception e) {
+                // 下一个 tick 重试
+                log.error("锁续期异常, 数量: {}", batch.size(), e);
+            }
+        }
+    }
+
+    public final class Lease {
+
+        private final RedisScript<Long> script;
+        private final List<String> keys;
+        private final List<String> args;
+        private final long renewDelay;
+        private volatile long nextRenewAt;
+
+        private Lease(RedisScript<Long> script, List<String> keys, List<String> args, long leaseMillis) {
+            this.script = script;
+            this.keys = keys;
+            this.args = args;
+            // 续期最多延迟一个 tick, 需要在过期前至少两个 tick 发起
+            this.renewDelay = Math.max(0, Math.min(leaseMillis / 3, leaseMillis - 2 * tickMillis));
+            this.nextRenewAt = System.currentTimeMillis() + renewDelay;
+        }
+
+        /**
+         * 停止续期, 需要在释放锁之前调用
+         */
+        public void cancel() {
+            leases.remove(this);
+        }
+
+        /**
+         * @return 是否仍在续期
+         */
+        public boolean isActive() {
+            return leases.contains(this);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.cqmike.base.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.ClassUtils;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+
+/**
+ * @program: common
+ * @description: redis 客户端指标, 通过 micrometer 导出
+ * <ul>
+ *     <li>redis.client.command 每个命令的耗时分布 p50/p99/p999</li>
+ *     <li>redis.client.errors 每个命令的异常次数</li>
+ *     <li>redis.client.payload 读写的字节数分布</li>
+ *     <li>redis.pool.* lettuce 连接池的借用等待时间与连接数</li>
+ *     <li>redis.near-cache.* / redis.compression.* 本地缓存与压缩的统计</li>
+ * </ul>
+ * 命令指标通过 {@link MeteredRedisTemplate} 代理 {@link RedisConnection} 采集, 所有经过 redisTemplate 的调用都会被统计;
+ * 管道和事务中的命令只是入队, 不统计耗时
+ * @author: chen qi
+ * @create: 2020-12-22 16:45
+ **/
+public class RedisMetrics implements MeterBinder, MeteredRedisTemplate.ConnectionInstrumenter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisMetrics.class);
+
+    /**
+     * lettuce 连接池注册 JMX 时使用的名称前缀, 由 {@link #poolConfig(RedisProperties.Pool)} 设置
+     */
+    public static final String POOL_JMX_NAME_PREFIX = "redisLettucePool";
+
+    /**
+     * 只匹配 lettuce 的连接池, 不统计同一个 JVM 中 DBCP 等其他 commons-pool2 连接池
+     */
+    private static final String POOL_OBJECT_NAME = "org.apache.commons.pool2:type=GenericObjectPool,name=" + POOL_JMX_NAME_PREFIX + "*";
+
+    private final RedisSerializer<?> valueSerializer;
+    private NearCache nearCache;
+    private HotKeyDetector hotKeyDetector;
+
+    private volatile MeterRegistry registry;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> errors = new ConcurrentHashMap<>();
+    private DistributionSummary readPayload;
+    private DistributionSummary writePayload;
+
+    /**
+     * @param valueSerializer value 序列化器, 为 {@link CompressingRedisSerializer} 时导出压缩统计
+     */
+    public RedisMetrics(RedisSerializer<?> valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * 近端缓存依赖 redisTemplate, 在 RedisClient 创建时设置, 此时可能已经绑定了 MeterRegistry
+     */
+    public synchronized void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+        if (registry != null) {
+            bindNearCache(registry);
+        }
+    }
+
+    public synchronized void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+        if (registry != null) {
+            bindHotKeyDetector(registry);
+        }
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.readPayload = DistributionSummary.builder("redis.client.payload")
+                .baseUnit("bytes").tag("direction", "read")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        this.writePayload = DistributionSummary.builder("redis.client.payload")
+                .baseUnit("bytes").tag("direction", "write")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        bindPool(registry);
+        bindNearCache(registry);
+        bindHotKeyDetector(registry);
+        if (valueSerializer instanceof CompressingRedisSerializer) {
+            CompressingRedisSerializer compressingSerializer = (CompressingRedisSerializer) valueSerializer;
+            Gauge.builder("redis.compression.ratio", compressingSerializer, CompressingRedisSerializer::getCompressionRatio)
+                    .register(registry);
+            FunctionCounter.builder("redis.compression.compressed", compressingSerializer, CompressingRedisSerializer::getCompressedCount)
+                    .register(registry);
+            FunctionCounter.builder("redis.compression.compress.time", compressingSerializer, s -> s.getCompressNanos() / 1e9)
+                    .baseUnit("seconds").register(registry);
+            FunctionCounter.builder("redis.compression.decompress.time", compressingSerializer, s -> s.getDecompressNanos() / 1e9)
+                    .baseUnit("seconds").register(registry);
+        }
+        this.registry = registry;
+    }
+
+    private void bindNearCache(MeterRegistry registry) {
+        if (nearCache == null) {
+            return;
+        }
+        FunctionCounter.builder("redis.near-cache.hits", nearCache, NearCache::getHitCount).register(registry);
+        FunctionCounter.builder("redis.near-cache.misses", nearCache, NearCache::getMissCount).register(registry);
+        FunctionCounter.builder("redis.near-cache.evictions", nearCache, NearCache::getEvictionCount).register(registry);
+        Gauge.builder("redis.near-cache.size", nearCache, NearCache::size).register(registry);
+    }
+
+    private void bindHotKeyDetector(MeterRegistry registry) {
+        if (hotKeyDetector == null) {
+            return;
+        }
+        Gauge.builder("redis.hot-key.count", hotKeyDetector, d -> d.hotKeys().size()).register(registry);
+        Gauge.builder("redis.hot-key.local.size", hotKeyDetector, HotKeyDetector::localCacheSize).register(registry);
+    }
+
+    /**
+     * 连接池在首次获取连接时才创建, 每次采集时从 JMX 中读取名称前缀为 {@link #POOL_JMX_NAME_PREFIX} 的连接池;
+     * lettuce 按连接类型创建多个连接池, 连接数取合计, 等待时间取最大值
+     */
+    private void bindPool(MeterRegistry registry) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Gauge.builder("redis.pool.borrow.wait.mean", server, s -> poolAttribute(s, "MeanBorrowWaitTimeMillis", Math::max))
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder("redis.pool.borrow.wait.max", server, s -> poolAttribute(s, "MaxBorrowWaitTimeMillis", Math::max))
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder("redis.pool.active", server, s -> poolAttribute(s, "NumActive", Double::sum)).register(registry);
+        Gauge.builder("redis.pool.idle", server, s -> poolAttribute(s, "NumIdle", Double::sum)).register(registry);
+        Gauge.builder("redis.pool.waiters", server, s -> poolAttribute(s, "NumWaiters", Double::sum)).register(registry);
+    }
+
+    /**
+     * 与 spring boot 默认的连接池配置相同, 额外指定 JMX 名称前缀
+     *
+     * @param pool spring.redis.lettuce.pool 配置
+     * @return 连接池配置
+     */
+    public static GenericObjectPoolConfig<?> poolConfig(RedisProperties.Pool pool) {
+        GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        if (pool.getTimeBetweenEvictionRuns() != null) {
+            config.setTimeBetweenEvictionRunsMillis(pool.getTimeBetweenEvictionRuns().toMillis());
+        }
+        if (pool.getMaxWait() != null) {
+            config.setMaxWaitMillis(pool.getMaxWait().toMillis());
+        }
+        config.setJmxNamePrefix(POOL_JMX_NAME_PREFIX);
+        return config;
+    }
+
+    private static double poolAttribute(MBeanServer server, String attribute, BinaryOperator<Double> reducer) {
+        double result = 0;
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName(POOL_OBJECT_NAME), null)) {
+                Object value = server.getAttribute(name, attribute);
+                if (value instanceof Number) {
+                    result = reducer.apply(result, ((Number) value).doubleValue());
+                }
+            }
+        } catch (Exception e) {
+            log.debug("read pool attribute error: {}", attribute, e);
+        }
+        return result;
+    }
+
+    /**
+     * 代理连接以采集命令指标, 未绑定 MeterRegistry 时直接返回原连接
+     *
+     * @param connection 连接
+     * @return 代理后的连接
+     */
+    @Override
+    public RedisConnection instrument(RedisConnection connection) {
+        if (registry == null || Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof MeteredInvocationHandler) {
+            return connection;
+        }
+        Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(connection.getClass(), getClass().getClassLoader());
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces,
+                new MeteredInvocationHandler(connection));
+    }
+
+    private Timer timer(String command, String outcome) {
+        return timers.computeIfAbsent(command + ":" + outcome, k -> Timer.builder("redis.client.command")
+                .tag("command", command)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry));
+    }
+
+    private Counter errorCounter(String command, Throwable e) {
+        String exception = e.getClass().getSimpleName();
+        return errors.computeIfAbsent(command + ":" + exception, k -> Counter.builder("redis.client.errors")
+                .tag("command", command)
+                .tag("exception", exception)
+                .register(registry));
+    }
+
+    private static boolean isCommand(Method method) {
+        if (method.getDeclaringClass() == Object.class) {
+            return false;
+        }
+        String name = method.getName();
+        switch (name) {
+            case "close":
+            case "isClosed":
+            case "getNativeConnection":
+            case "isQueueing":
+            case "isPipelined":
+            case "openPipeline":
+            case "closePipeline":
+            case "getSentinelConnection":
+                return false;
+            default:
+                return !name.endsWith("Commands");
+        }
+    }
+
+    private static long payloadSize(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        long size = 0;
+        if (value instanceof byte[][]) {
+            for (byte[] bytes : (byte[][]) value) {
+                size += bytes == null ? 0 : bytes.length;
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                size += payloadSize(element);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += payloadSize(entry.getKey()) + payloadSize(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    private class MeteredInvocationHandler implements InvocationHandler {
+
+        private final RedisConnection target;
+
+        private MeteredInvocationHandler(RedisConnection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!isCommand(method) || target.isPipelined() || target.isQueueing()) {
+                return invokeTarget(method, args);
+            }
+            String command = method.getName();
+            if (args != null) {
+                long size = 0;
+                for (Object arg : args) {
+                    size += payloadSize(arg);
+                }
+                writePayload.record(size);
+            }
+            long start = System.nanoTime();
+            try {
+                Object result = invokeTarget(method, args);
+                timer(command, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                readPayload.record(payloadSize(result));
+                return result;
+            } catch (Throwable e) {
+                timer(command, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                errorCounter(command, e).increment();
+                throw e;
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
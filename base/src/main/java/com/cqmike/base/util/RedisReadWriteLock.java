@@ -0,0 +1,220 @@
+package com.cqmike.base.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * @program: common
+ * @description: 基于 hash 的可重入分布式读写锁
+ * <p>
+ * 锁的key为 hash, mode 字段记录当前模式 read/write, 读锁持有者的 field 为 持有者, 写锁为 持有者:write, value 为重入次数.
+ * 读锁之间共享, 写锁独占; 持有写锁的线程可以再获取读锁, 释放写锁后降级为读锁. 每个持有者第一次获取时交给看门狗续期,
+ * 所有持有者共用 key 的过期时间, 宕机的持有者在其他持有者全部释放后随租期过期
+ * <pre>
+ *     RedisReadWriteLock rwLock = new RedisReadWriteLock(redisClient, watchdog, "LOCK:config", 30000);
+ *     rwLock.readLock().lock();
+ *     try {
+ *         ...
+ *     } finally {
+ *         rwLock.readLock().unlock();
+ *     }
+ * </pre>
+ * 读锁持续被持有时写锁无法获取, 不适合读请求源源不断且写请求需要及时执行的场景
+ * @author: chen qi
+ * @create: 2020-12-27 15:40
+ **/
+public class RedisReadWriteLock implements ReadWriteLock {
+
+    private static final String WRITE_SUFFIX = ":write";
+
+    /**
+     * ARGV: 持有者field, 租期(毫秒), 写锁field; 返回重入次数, 获取失败返回 0
+     */
+    private static final String READ_LOCK_LUA = "local mode = redis.call('hget', KEYS[1], 'mode')\n" +
+            "if mode == false then\n" +
+            "    redis.call('hset', KEYS[1], 'mode', 'read')\n" +
+            "elseif mode == 'write' and redis.call('hexists', KEYS[1], ARGV[3]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "local count = redis.call('hincrby', KEYS[1], ARGV[1], 1)\n" +
+            "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('pexpire', KEYS[1], ARGV[2]) end\n" +
+            "return count";
+
+    /**
+     * ARGV: 持有者field, 租期(毫秒); 返回重入次数, 获取失败返回 0
+     */
+    private static final String WRITE_LOCK_LUA = "local mode = redis.call('hget', KEYS[1], 'mode')\n" +
+            "if mode == false then\n" +
+            "    redis.call('hset', KEYS[1], 'mode', 'write')\n" +
+            "elseif mode ~= 'write' or redis.call('hexists', KEYS[1], ARGV[1]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "local count = redis.call('hincrby', KEYS[1], ARGV[1], 1)\n" +
+            "redis.call('pexpire', KEYS[1], ARGV[2])\n" +
+            "return count";
+
+    /**
+     * ARGV: 持有者field, 租期(毫秒), 释放通知的 channel; 返回剩余重入次数, 未持有返回 -1
+     * <p>没有持有者时删除锁; 写锁释放后只剩同一线程的读锁时降级为读模式; field 完全释放时发布通知</p>
+     */
+    private static final String UNLOCK_LUA = "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return -1 end\n" +
+            "local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)\n" +
+            "if count > 0 then\n" +
+            "    if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('pexpire', KEYS[1], ARGV[2]) end\n" +
+            "    return count\n" +
+            "end\n" +
+            "redis.call('hdel', KEYS[1], ARGV[1])\n" +
+            "if redis.call('hlen', KEYS[1]) <= 1 then\n" +
+            "    redis.call('del', KEYS[1])\n" +
+            "elseif string.sub(ARGV[1], -6) == ':write' then\n" +
+            "    redis.call('hset', KEYS[1], 'mode', 'read')\n" +
+            "end\n" +
+            "redis.call('publish', ARGV[3], KEYS[1])\n" +
+            "return 0";
+
+    /**
+     * lockKey:持有者field -> 续期句柄
+     */
+    private static final ConcurrentMap<String, RedisLockWatchdog.Lease> LEASES = new ConcurrentHashMap<>();
+
+    private final RedisClient redisClient;
+    private final RedisLockWatchdog watchdog;
+    private final String lockKey;
+    private final long leaseMillis;
+    private final HoldLock readLock = new HoldLock(false);
+    private final HoldLock writeLock = new HoldLock(true);
+
+    /**
+     * @param redisClient redisClient
+     * @param watchdog    续期看门狗, 为空时不续期, 锁在租期后过期
+     * @param lockKey     锁的key
+     * @param leaseMillis 租期(毫秒)
+     */
+    public RedisReadWriteLock(RedisClient redisClient, RedisLockWatchdog watchdog, String lockKey, long leaseMillis) {
+        this.redisClient = redisClient;
+        this.watchdog = watchdog;
+        this.lockKey = lockKey;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 注册锁相关的脚本, 用于启动时预加载
+     */
+    public static void registerScripts(RedisClient redisClient) {
+        redisClient.script(READ_LOCK_LUA, Long.class);
+        redisClient.script(WRITE_LOCK_LUA, Long.class);
+        redisClient.script(UNLOCK_LUA, Long.class);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    public String getLockKey() {
+        return lockKey;
+    }
+
+    private final class HoldLock implements Lock {
+
+        private final boolean write;
+
+        private HoldLock(boolean write) {
+            this.write = write;
+        }
+
+        @Override
+        public void lock() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    lockInterruptibly();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            tryLock(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean tryLock() {
+            return acquire(RedisReentrantLock.currentOwner());
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            final String owner = RedisReentrantLock.currentOwner();
+            return RedisLockUtil.await(lockKey, unit.toMillis(time), () -> acquire(owner));
+        }
+
+        /**
+         * @throws IllegalMonitorStateException 当前线程未持有锁
+         */
+        @Override
+        public void unlock() {
+            final String field = field(RedisReentrantLock.currentOwner());
+            Long result = redisClient.eval(UNLOCK_LUA, Long.class, Collections.singletonList(lockKey),
+                    Arrays.asList(field, String.valueOf(leaseMillis), RedisLockUtil.channel(lockKey)));
+            if (result == null || result <= 0) {
+                RedisLockWatchdog.Lease lease = LEASES.remove(lockKey + ":" + field);
+                if (lease != null) {
+                    lease.cancel();
+                }
+            }
+            if (result == null || result < 0) {
+                throw new IllegalMonitorStateException("当前线程未持有锁: " + lockKey + ", field: " + field);
+            }
+        }
+
+        /**
+         * 不支持
+         */
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean acquire(String owner) {
+            final String field = field(owner);
+            Long count = write
+                    ? redisClient.eval(WRITE_LOCK_LUA, Long.class, Collections.singletonList(lockKey),
+                    Arrays.asList(field, String.valueOf(leaseMillis)))
+                    : redisClient.eval(READ_LOCK_LUA, Long.class, Collections.singletonList(lockKey),
+                    Arrays.asList(field, String.valueOf(leaseMillis), owner + WRITE_SUFFIX));
+            if (count == null || count <= 0) {
+                return false;
+            }
+            if (count == 1 && watchdog != null) {
+                LEASES.put(lockKey + ":" + field, watchdog.watch(redisClient.script(RedisReentrantLock.RENEW_LUA, Long.class),
+                        Collections.singletonList(lockKey), Arrays.asList(field, String.valueOf(leaseMillis)), leaseMillis));
+            }
+            return true;
+        }
+
+        private String field(String owner) {
+            return write ? owner + WRITE_SUFFIX : owner;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.cqmike.base.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @program: common
+ * @description: 基于 hash 的可重入分布式锁
+ * <p>
+ * 锁的key为 hash, field 为持有者 (节点id:线程id), value 为重入次数, 获取与释放都在一次 lua 脚本中完成;
+ * 同一个线程重复获取时次数加一, 次数减到 0 时删除锁并发布释放通知. 第一次获取时交给看门狗续期, 完全释放时停止续期
+ * <pre>
+ *     Lock lock = new RedisReentrantLock(redisClient, watchdog, "LOCK:order:1", 30000);
+ *     if (lock.tryLock(1, TimeUnit.SECONDS)) {
+ *         try {
+ *             ...
+ *         } finally {
+ *             lock.unlock();
+ *         }
+ *     }
+ * </pre>
+ * 与 {@link RedisLockUtil} 的锁数据结构不同, 同一个key只能使用其中一种
+ * @author: chen qi
+ * @create: 2020-12-27 10:20
+ **/
+public class RedisReentrantLock implements Lock {
+
+    /**
+     * ARGV: 持有者, 租期(毫秒); 返回重入次数, 被其他持有者占用时返回 0
+     */
+    private static final String LOCK_LUA = "if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 then\n" +
+            "    local count = redis.call('hincrby', KEYS[1], ARGV[1], 1)\n" +
+            "    redis.call('pexpire', KEYS[1], ARGV[2])\n" +
+            "    return count\n" +
+            "end\n" +
+            "return 0";
+
+    /**
+     * ARGV: 持有者, 租期(毫秒), 释放通知的 channel; 返回 1 完全释放, 0 仍持有, -1 未持有
+     */
+    private static final String UNLOCK_LUA = "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return -1 end\n" +
+            "if redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0 then\n" +
+            "    redis.call('pexpire', KEYS[1], ARGV[2])\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('del', KEYS[1])\n" +
+            "redis.call('publish', ARGV[3], KEYS[1])\n" +
+            "return 1";
+
+    /**
+     * hash 中存在 ARGV[1] 时延长过期时间; ARGV: 持有者, 租期(毫秒)
+     */
+    static final String RENEW_LUA = "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then\n" +
+            "    redis.call('pexpire', KEYS[1], ARGV[2])\n" +
+            "    return 1\n" +
+            "end\n" +
+            "return 0";
+
+    private static final String HOLD_COUNT_LUA = "return tonumber(redis.call('hget', KEYS[1], ARGV[1]) or 0)";
+
+    /**
+     * lockKey:持有者 -> 续期句柄; 嵌套调用可能使用不同的实例, 续期句柄在实例之间共享
+     */
+    private static final ConcurrentMap<String, RedisLockWatchdog.Lease> LEASES = new ConcurrentHashMap<>();
+
+    private final RedisClient redisClient;
+    private final RedisLockWatchdog watchdog;
+    private final String lockKey;
+    private final long leaseMillis;
+
+    /**
+     * @param redisClient redisClient
+     * @param watchdog    续期看门狗, 为空时不续期, 锁在租期后过期
+     * @param lockKey     锁的key
+     * @param leaseMillis 租期(毫秒)
+     */
+    public RedisReentrantLock(RedisClient redisClient, RedisLockWatchdog watchdog, String lockKey, long leaseMillis) {
+        this.redisClient = redisClient;
+        this.watchdog = watchdog;
+        this.lockKey = lockKey;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 注册锁相关的脚本, 用于启动时预加载
+     */
+    public static void registerScripts(RedisClient redisClient) {
+        redisClient.script(LOCK_LUA, Long.class);
+        redisClient.script(UNLOCK_LUA, Long.class);
+        redisClient.script(RENEW_LUA, Long.class);
+    }
+
+    /**
+     * @return 当前线程的持有者标识
+     */
+    public static String currentOwner() {
+        return RedisLockUtil.NODE_ID + ":" + Thread.currentThread().getId();
+    }
+
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        tryLock(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock() {
+        return acquire(currentOwner());
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        final String owner = currentOwner();
+        return RedisLockUtil.await(lockKey, unit.toMillis(time), () -> acquire(owner));
+    }
+
+    /**
+     * @throws IllegalMonitorStateException 当前线程未持有锁
+     */
+    @Override
+    public void unlock() {
+        final String owner = currentOwner();
+        Long result = redisClient.eval(UNLOCK_LUA, Long.class, Collections.singletonList(lockKey),
+                Arrays.asList(owner, String.valueOf(leaseMillis), RedisLockUtil.channel(lockKey)));
+        if (result == null || result < 0) {
+            cancelLease(owner);
+            throw new IllegalMonitorStateException("当前线程未持有锁: " + lockKey + ", owner: " + owner);
+        }
+        if (RedisLockUtil.SUCCESS.equals(result)) {
+            cancelLease(owner);
+        }
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return 当前线程是否持有锁
+     */
+    public boolean isHeldByCurrentThread() {
+        return getHoldCount() > 0;
+    }
+
+    /**
+     * @return 当前线程的重入次数
+     */
+    public int getHoldCount() {
+        Long count = redisClient.eval(HOLD_COUNT_LUA, Long.class, Collections.singletonList(lockKey),
+                Collections.singletonList(currentOwner()));
+        return count == null ? 0 : count.intValue();
+    }
+
+    public String getLockKey() {
+        return lockKey;
+    }
+
+    private boolean acquire(String owner) {
+        Long count = redisClient.eval(LOCK_LUA, Long.class, Collections.singletonList(lockKey),
+                Arrays.asList(owner, String.valueOf(leaseMillis)));
+        if (count == null || count <= 0) {
+            return false;
+        }
+        if (count == 1 && watchdog != null) {
+            LEASES.put(leaseKey(owner), watchdog.watch(redisClient.script(RENEW_LUA, Long.class),
+                    Collections.singletonList(lockKey), Arrays.asList(owner, String.valueOf(leaseMillis)), leaseMillis));
+        }
+        return true;
+    }
+
+    private void cancelLease(String owner) {
+        RedisLockWatchdog.Lease lease = LEASES.remove(leaseKey(owner));
+        if (lease != null) {
+            lease.cancel();
+        }
+    }
+
+    private String leaseKey(String owner) {
+        return lockKey + ":" + owner;
+    }
+}
@@ -0,0 +1,193 @@
+package com.cqmike.base.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: 基于 zset 的分布式信号量, 许可带租期
+ * <p>
+ * 每次获取生成一个许可id, 以 许可id:序号 为成员、到期时间为分数写入 zset; 获取前先移除到期的许可, 持有者宕机时许可在租期后自动归还.
+ * 获取成功后交给看门狗续期, 归还时发布释放通知唤醒等待的线程. 到期时间使用 redis 服务端时间, 不受节点时钟偏差影响
+ * <pre>
+ *     RedisSemaphore semaphore = new RedisSemaphore(redisClient, watchdog, "SEMAPHORE:export", 5, 30000);
+ *     String permitId = semaphore.tryAcquire(1, 1, TimeUnit.SECONDS);
+ *     if (permitId != null) {
+ *         try {
+ *             ...
+ *         } finally {
+ *             semaphore.release(permitId);
+ *         }
+ *     }
+ * </pre>
+ * @author: chen qi
+ * @create: 2020-12-27 17:10
+ **/
+public class RedisSemaphore {
+
+    /**
+     * ARGV: 总许可数, 本次获取数, 租期(毫秒), 许可id; 返回 1 成功 0 许可不足
+     */
+    private static final String ACQUIRE_LUA = "redis.replicate_commands()\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+            "local permits = tonumber(ARGV[2])\n" +
+            "local lease = tonumber(ARGV[3])\n" +
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', now)\n" +
+            "if redis.call('zcard', KEYS[1]) + permits > tonumber(ARGV[1]) then return 0 end\n" +
+            "for i = 1, permits do redis.call('zadd', KEYS[1], now + lease, ARGV[4] .. ':' .. i) end\n" +
+            "if redis.call('pttl', KEYS[1]) < lease then redis.call('pexpire', KEYS[1], lease) end\n" +
+            "return 1";
+
+    /**
+     * ARGV: 许可id, 租期(毫秒), 许可数; 许可已到期被移除时返回 0
+     */
+    private static final String RENEW_LUA = "redis.replicate_commands()\n" +
+            "if not redis.call('zscore', KEYS[1], ARGV[1] .. ':1') then return 0 end\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+            "local lease = tonumber(ARGV[2])\n" +
+            "for i = 1, tonumber(ARGV[3]) do redis.call('zadd', KEYS[1], 'XX', now + lease, ARGV[1] .. ':' .. i) end\n" +
+            "if redis.call('pttl', KEYS[1]) < lease then redis.call('pexpire', KEYS[1], lease) end\n" +
+            "return 1";
+
+    /**
+     * ARGV: 许可id, 许可数, 释放通知的 channel; 返回归还的许可数
+     */
+    private static final String RELEASE_LUA = "local members = {}\n" +
+            "for i = 1, tonumber(ARGV[2]) do members[i] = ARGV[1] .. ':' .. i end\n" +
+            "local removed = redis.call('zrem', KEYS[1], unpack(members))\n" +
+            "if removed > 0 then redis.call('publish', ARGV[3], KEYS[1]) end\n" +
+            "return removed";
+
+    private static final String AVAILABLE_LUA = "redis.replicate_commands()\n" +
+            "local time = redis.call('time')\n" +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', now)\n" +
+            "return tonumber(ARGV[1]) - redis.call('zcard', KEYS[1])";
+
+    private final RedisClient redisClient;
+    private final RedisLockWatchdog watchdog;
+    private final String key;
+    private final int permits;
+    private final long leaseMillis;
+
+    /**
+     * 许可id -> 持有的许可
+     */
+    private final ConcurrentMap<String, Permit> held = new ConcurrentHashMap<>();
+
+    /**
+     * @param redisClient redisClient
+     * @param watchdog    续期看门狗, 为空时不续期, 许可在租期后自动归还
+     * @param key         信号量的key
+     * @param permits     总许可数
+     * @param leaseMillis 许可的租期(毫秒)
+     */
+    public RedisSemaphore(RedisClient redisClient, RedisLockWatchdog watchdog, String key, int permits, long leaseMillis) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits 必须大于 0");
+        }
+        this.redisClient = redisClient;
+        this.watchdog = watchdog;
+        this.key = key;
+        this.permits = permits;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 注册信号量相关的脚本, 用于启动时预加载
+     */
+    public static void registerScripts(RedisClient redisClient) {
+        redisClient.script(ACQUIRE_LUA, Long.class);
+        redisClient.script(RENEW_LUA, Long.class);
+        redisClient.script(RELEASE_LUA, Long.class);
+        redisClient.script(AVAILABLE_LUA, Long.class);
+    }
+
+    /**
+     * 不等待地获取许可
+     *
+     * @param count 获取的许可数
+     * @return 许可id, 许可不足时返回 null
+     */
+    public String tryAcquire(int count) {
+        if (count <= 0 || count > permits) {
+            throw new IllegalArgumentException("count 需要在 1 到 " + permits + " 之间");
+        }
+        String permitId = RedisLockUtil.NODE_ID + ":" + UUID.randomUUID();
+        Long result = redisClient.eval(ACQUIRE_LUA, Long.class, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(permits), String.valueOf(count), String.valueOf(leaseMillis), permitId));
+        if (!Objects.equals(RedisLockUtil.SUCCESS, result)) {
+            return null;
+        }
+        RedisLockWatchdog.Lease lease = watchdog == null ? null : watchdog.watch(redisClient.script(RENEW_LUA, Long.class),
+                Collections.singletonList(key), Arrays.asList(permitId, String.valueOf(leaseMillis), String.valueOf(count)),
+                leaseMillis);
+        held.put(permitId, new Permit(count, lease));
+        return permitId;
+    }
+
+    /**
+     * 获取许可, 许可不足时最多等待 time
+     *
+     * @param count 获取的许可数
+     * @return 许可id, 超时返回 null
+     * @throws InterruptedException
+     */
+    public String tryAcquire(int count, long time, TimeUnit unit) throws InterruptedException {
+        String[] permitId = new String[1];
+        if (RedisLockUtil.await(key, unit.toMillis(time), () -> (permitId[0] = tryAcquire(count)) != null)) {
+            return permitId[0];
+        }
+        return null;
+    }
+
+    /**
+     * 归还许可
+     *
+     * @param permitId 获取时返回的许可id
+     * @return 是否归还成功, 许可已到期被移除时返回 false
+     */
+    public boolean release(String permitId) {
+        Permit permit = held.remove(permitId);
+        if (permit == null) {
+            return false;
+        }
+        if (permit.lease != null) {
+            permit.lease.cancel();
+        }
+        Long removed = redisClient.eval(RELEASE_LUA, Long.class, Collections.singletonList(key),
+                Arrays.asList(permitId, String.valueOf(permit.count), RedisLockUtil.channel(key)));
+        return removed != null && removed > 0;
+    }
+
+    /**
+     * @return 当前可用的许可数
+     */
+    public long availablePermits() {
+        Long available = redisClient.eval(AVAILABLE_LUA, Long.class, Collections.singletonList(key),
+                Collections.singletonList(String.valueOf(permits)));
+        return available == null ? permits : Math.max(available, 0);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    private static final class Permit {
+
+        private final int count;
+        private final RedisLockWatchdog.Lease lease;
+
+        private Permit(int count, RedisLockWatchdog.Lease lease) {
+            this.count = count;
+            this.lease = lease;
+        }
+    }
+}
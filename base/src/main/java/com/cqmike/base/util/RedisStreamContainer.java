@@ -0,0 +1,282 @@
+package com.cqmike.base.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.stream.MapRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * @program: common
+ * @description: redis stream 消费组的批量消费容器
+ * <p>
+ * 拉取线程每次 XREADGROUP 最多 batchSize 条消息, 分发到固定大小的工作线程池处理; 处理中的消息数量不超过 maxInFlight,
+ * 达到上限后拉取线程等待, 不再从 redis 读取. 处理成功的消息在下一轮拉取前统一 XACK
+ * <p>
+ * 处理失败或消费者宕机时消息留在 pending 列表中, 每隔 claimInterval 通过 XCLAIM 接管空闲超过 claimMinIdle 的消息重新处理,
+ * 消息至少被处理一次, handler 需要保证幂等. 投递次数达到 maxDeliveries 的消息转入死信 stream (默认 key:dlq) 后确认,
+ * 不再重试; 接管时已被删除的消息直接确认
+ * <pre>
+ *     &#64;Bean
+ *     public RedisStreamContainer&lt;Order&gt; orderContainer(RedisClient redisClient) {
+ *         return new RedisStreamContainer&lt;&gt;(redisClient, "order:stream", "order-group", "node-1", Order.class,
+ *                 record -&gt; orderService.handle(record.getValue()));
+ *     }
+ * </pre>
+ * @author: chen qi
+ * @create: 2020-12-24 09:30
+ **/
+public class RedisStreamContainer<T> implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisStreamContainer.class);
+
+    /**
+     * redis 异常后的重试间隔
+     */
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
+
+    private final RedisClient redisClient;
+    private final String key;
+    private final String group;
+    private final String consumer;
+    private final Class<T> clazz;
+    private final Consumer<MapRecord<String, String, T>> handler;
+
+    /**
+     * 每次拉取的最大消息数量
+     */
+    private int batchSize = 100;
+
+    /**
+     * 没有消息时 XREADGROUP 的阻塞时间(毫秒)
+     */
+    private long blockMillis = 2000;
+
+    /**
+     * 工作线程数
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 已拉取未处理完的最大消息数量
+     */
+    private int maxInFlight = 1000;
+
+    /**
+     * pending 消息空闲超过该时间(毫秒)后被接管
+     */
+    private long claimMinIdleMillis = 60000;
+
+    /**
+     * 检查 pending 消息的间隔(毫秒)
+     */
+    private long claimIntervalMillis = 30000;
+
+    /**
+     * 最大投递次数, 小于等于0时不限制
+     */
+    private long maxDeliveries = 10;
+
+    /**
+     * 超过最大投递次数的消息写入的 stream, 为空时只记录日志
+     */
+    private String deadLetterKey;
+
+    private volatile boolean running;
+    private Thread pollThread;
+    private ExecutorService executor;
+    private Semaphore permits;
+    private final ConcurrentLinkedQueue<String> acks = new ConcurrentLinkedQueue<>();
+
+    public RedisStreamContainer(RedisClient redisClient, String key, String group, String consumer, Class<T> clazz,
+                                Consumer<MapRecord<String, String, T>> handler) {
+        this.redisClient = redisClient;
+        this.key = key;
+        this.group = group;
+        this.consumer = consumer;
+        this.clazz = clazz;
+        this.handler = handler;
+        this.deadLetterKey = key + ":dlq";
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        redisClient.xgroupCreate(key, group);
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "redis-stream-" + key + "-" + index.incrementAndGet()));
+        this.permits = new Semaphore(maxInFlight);
+        this.running = true;
+        this.pollThread = new Thread(this::poll, "redis-stream-" + key + "-poll");
+        this.pollThread.start();
+        log.info("redis stream 消费启动: key={}, group={}, consumer={}", key, group, consumer);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            pollThread.join(blockMillis + ERROR_BACKOFF_MILLIS);
+            executor.shutdown();
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("redis stream 消费停止超时, 未处理完的消息将被重新接管: key={}", key);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAcks();
+        log.info("redis stream 消费停止: key={}, group={}, consumer={}", key, group, consumer);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void poll() {
+        long lastClaim = 0;
+        while (running) {
+            try {
+                flushAcks();
+                if (System.currentTimeMillis() - lastClaim >= claimIntervalMillis) {
+                    lastClaim = System.currentTimeMillis();
+                    int count = acquire();
+                    if (count > 0) {
+                        read(count, () -> redisClient.xclaim(key, group, consumer, claimMinIdleMillis, count,
+                                maxDeliveries, deadLetterKey, clazz));
+                    }
+                }
+                int count = acquire();
+                if (count > 0) {
+                    read(count, () -> redisClient.xreadgroup(key, group, consumer, count, blockMillis, clazz));
+                }
+            } catch (Exception e) {
+                log.error("redis stream 拉取失败: key={}, group={}", key, group, e);
+                sleep(ERROR_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 至少获取一个处理名额, 最多 batchSize 个; 等待超时返回 0
+     */
+    private int acquire() throws InterruptedException {
+        if (!permits.tryAcquire(blockMillis, TimeUnit.MILLISECONDS)) {
+            return 0;
+        }
+        int count = 1 + permits.drainPermits();
+        if (count > batchSize) {
+            permits.release(count - batchSize);
+            count = batchSize;
+        }
+        return count;
+    }
+
+    /**
+     * 读取失败时归还已获取的处理名额, 否则每次 redis 异常都会永久占用名额, 直至拉取线程无法再获取
+     */
+    private void read(int acquired, Supplier<List<MapRecord<String, String, T>>> reader) {
+        List<MapRecord<String, String, T>> records;
+        try {
+            records = reader.get();
+        } catch (RuntimeException e) {
+            permits.release(acquired);
+            throw e;
+        }
+        dispatch(records, acquired);
+    }
+
+    private void dispatch(List<MapRecord<String, String, T>> records, int acquired) {
+        permits.release(acquired - records.size());
+        for (MapRecord<String, String, T> record : records) {
+            executor.execute(() -> {
+                try {
+                    handler.accept(record);
+                    acks.add(record.getId().getValue());
+                } catch (Exception e) {
+                    log.error("redis stream 消息处理失败: key={}, id={}", key, record.getId(), e);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * 一次 XACK 确认所有已处理的消息
+     */
+    private void flushAcks() {
+        if (acks.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        String id;
+        while ((id = acks.poll()) != null) {
+            ids.add(id);
+        }
+        try {
+            redisClient.xack(key, group, ids.toArray(new String[0]));
+        } catch (Exception e) {
+            // 未确认的消息会被重新接管
+            log.error("redis stream ack 失败: key={}, size={}", key, ids.size(), e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBlockMillis(long blockMillis) {
+        this.blockMillis = blockMillis;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setClaimMinIdleMillis(long claimMinIdleMillis) {
+        this.claimMinIdleMillis = claimMinIdleMillis;
+    }
+
+    public void setClaimIntervalMillis(long claimIntervalMillis) {
+        this.claimIntervalMillis = claimIntervalMillis;
+    }
+
+    public void setMaxDeliveries(long maxDeliveries) {
+        this.maxDeliveries = maxDeliveries;
+    }
+
+    public void setDeadLetterKey(String deadLetterKey) {
+        this.deadLetterKey = deadLetterKey;
+    }
+}
@@ -0,0 +1,77 @@
+package com.cqmike.base.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * @program: common
+ * @description: Smile 二进制序列化
+ * <p>
+ * 不开启 default typing, 值中不再写入类名, 读取时由 {@link RedisClient} 按调用方传入的类型转换.
+ * 不是 Smile 头的数据交给 legacySerializer 读取, 用于迁移期间兼容已有的 json 数据
+ * <p>
+ * 由于不写入类名, 不传入类型的接口 (sGet、lGet 等返回 Object 的方法) 读到的是 Map/List 等对象树, 而不是写入时的对象;
+ * 需要使用带 Class/TypeReference 参数的接口读取, 或切换前确认调用方没有依赖返回的具体类型
+ * @author: chen qi
+ * @create: 2020-12-13 15:02
+ **/
+public class SmileRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * Smile 数据头 ":)\n"
+     */
+    private static final byte[] SMILE_HEADER = {0x3A, 0x29, 0x0A};
+
+    private final ObjectMapper smileMapper;
+
+    private final RedisSerializer<Object> legacySerializer;
+
+    /**
+     * @param smileMapper      基于 SmileFactory 的 ObjectMapper
+     * @param legacySerializer 读取旧数据的序列化器
+     */
+    public SmileRedisSerializer(ObjectMapper smileMapper, RedisSerializer<Object> legacySerializer) {
+        this.smileMapper = smileMapper;
+        this.legacySerializer = legacySerializer;
+    }
+
+    @Override
+    public byte[] serialize(Object t) throws SerializationException {
+        if (t == null) {
+            return new byte[0];
+        }
+        try {
+            return smileMapper.writeValueAsBytes(t);
+        } catch (Exception e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (!isSmile(bytes)) {
+            return legacySerializer.deserialize(bytes);
+        }
+        try {
+            return smileMapper.readValue(bytes, Object.class);
+        } catch (Exception e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+
+    public static boolean isSmile(byte[] bytes) {
+        if (bytes.length < SMILE_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < SMILE_HEADER.length; i++) {
+            if (bytes[i] != SMILE_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,216 @@
+package com.cqmike.base.config;
+
+import com.cqmike.base.util.RedisClient;
+import com.cqmike.base.util.SmileRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: json (default typing) 与 smile 序列化的对比, 包括数据大小与序列化/反序列化吞吐
+ * <p>
+ * 反序列化包含 {@link RedisClient.Jackson2JsonRedisSerializer#deserialize(Object, Class)} 转换为目标类型的开销,
+ * 与 RedisClient 的 get(key, clazz) 读取路径一致
+ * <pre>
+ *     mvn -pl base test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cqmike.base.config.RedisSerializerBenchmark
+ * </pre>
+ * @author: chen qi
+ * @create: 2020-12-28 10:15
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisSerializerBenchmark {
+
+    /**
+     * 订单明细数量, 对应小对象与较大的对象
+     */
+    @Param({"1", "50"})
+    public int items;
+
+    private RedisSerializer<Object> json;
+    private RedisSerializer<Object> smile;
+    private Order order;
+    private byte[] jsonBytes;
+    private byte[] smileBytes;
+
+    @Setup
+    public void setup() {
+        json = RedisConfig.jsonSerializer();
+        smile = new SmileRedisSerializer(RedisConfig.smileObjectMapper(), json);
+        order = Order.sample(items);
+        jsonBytes = json.serialize(order);
+        smileBytes = smile.serialize(order);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return json.serialize(order);
+    }
+
+    @Benchmark
+    public byte[] serializeSmile() {
+        return smile.serialize(order);
+    }
+
+    @Benchmark
+    public Order deserializeJson() {
+        return RedisClient.Jackson2JsonRedisSerializer.deserialize(json.deserialize(jsonBytes), Order.class);
+    }
+
+    @Benchmark
+    public Order deserializeSmile() {
+        return RedisClient.Jackson2JsonRedisSerializer.deserialize(smile.deserialize(smileBytes), Order.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int items : new int[]{1, 50}) {
+            RedisSerializerBenchmark benchmark = new RedisSerializerBenchmark();
+            benchmark.items = items;
+            benchmark.setup();
+            System.out.printf("items=%d, json=%d bytes, smile=%d bytes%n", items,
+                    benchmark.jsonBytes.length, benchmark.smileBytes.length);
+        }
+        new Runner(new OptionsBuilder().include(RedisSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class Order {
+
+        private Long id;
+        private String orderNo;
+        private Integer status;
+        private LocalDateTime createTime;
+        private List<String> tags;
+        private List<Item> items;
+
+        public static Order sample(int itemCount) {
+            Order order = new Order();
+            order.setId(1339482390458720256L);
+            order.setOrderNo("SO20201228000001");
+            order.setStatus(2);
+            order.setCreateTime(LocalDateTime.of(2020, 12, 28, 10, 15, 30));
+            order.setTags(new ArrayList<>(Arrays.asList("vip", "express")));
+            List<Item> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                Item item = new Item();
+                item.setSkuId(100000L + i);
+                item.setName("商品-" + i);
+                item.setQuantity(i % 5 + 1);
+                item.setPrice(1999L + i);
+                items.add(item);
+            }
+            order.setItems(items);
+            return order;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getOrderNo() {
+            return orderNo;
+        }
+
+        public void setOrderNo(String orderNo) {
+            this.orderNo = orderNo;
+        }
+
+        public Integer getStatus() {
+            return status;
+        }
+
+        public void setStatus(Integer status) {
+            this.status = status;
+        }
+
+        public LocalDateTime getCreateTime() {
+            return createTime;
+        }
+
+        public void setCreateTime(LocalDateTime createTime) {
+            this.createTime = createTime;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+    }
+
+    public static class Item {
+
+        private Long skuId;
+        private String name;
+        private Integer quantity;
+        private Long price;
+
+        public Long getSkuId() {
+            return skuId;
+        }
+
+        public void setSkuId(Long skuId) {
+            this.skuId = skuId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(Integer quantity) {
+            this.quantity = quantity;
+        }
+
+        public Long getPrice() {
+            return price;
+        }
+
+        public void setPrice(Long price) {
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.cqmike.base.config;
+
+import com.cqmike.base.config.RedisSerializerBenchmark.Order;
+import com.cqmike.base.util.RedisClient;
+import com.cqmike.base.util.SmileRedisSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: smile 序列化不写入类名, 按 Object 读取时只能得到 Map/List, 需要按类型读取
+ * @author: chen qi
+ * @create: 2020-12-28 10:40
+ **/
+class SmileRedisSerializerTest {
+
+    private final RedisSerializer<Object> json = RedisConfig.jsonSerializer();
+    private final RedisSerializer<Object> smile = new SmileRedisSerializer(RedisConfig.smileObjectMapper(), json);
+
+    @Test
+    void rawReadLosesType() {
+        Object value = smile.deserialize(smile.serialize(Order.sample(2)));
+        assertTrue(value instanceof Map);
+        assertFalse(value instanceof Order);
+    }
+
+    @Test
+    void typedReadConvertsToTarget() {
+        Order order = Order.sample(2);
+        Order read = RedisClient.Jackson2JsonRedisSerializer.deserialize(smile.deserialize(smile.serialize(order)), Order.class);
+        assertEquals(order.getId(), read.getId());
+        assertEquals(order.getCreateTime(), read.getCreateTime());
+        assertEquals(order.getItems().get(1).getSkuId(), read.getItems().get(1).getSkuId());
+    }
+
+    @Test
+    void readsLegacyJson() {
+        Order order = Order.sample(1);
+        Object value = smile.deserialize(json.serialize(order));
+        assertTrue(value instanceof Order);
+        assertEquals(order.getOrderNo(), ((Order) value).getOrderNo());
+    }
+
+    @Test
+    void smileIsSmaller() {
+        Order order = Order.sample(50);
+        assertTrue(smile.serialize(order).length < json.serialize(order).length);
+    }
+}
@@ -0,0 +1,77 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.config.RedisSerializerBenchmark.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: common
+ * @description: 已解码的对象树转换为目标类型, 重新序列化为 json 字符串再解析 与 convertValue 直接转换的对比
+ * <p>
+ * 通过 GCProfiler 输出每次操作的分配字节数 gc.alloc.rate.norm
+ * <pre>
+ *     mvn -pl base test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cqmike.base.util.JsonConvertBenchmark
+ * </pre>
+ * @author: chen qi
+ * @create: 2020-12-28 11:20
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonConvertBenchmark {
+
+    @Param({"1", "50"})
+    public int items;
+
+    /**
+     * redisTemplate 读取 smile 或无类名 json 时得到的 LinkedHashMap 对象树
+     */
+    private Map<?, ?> tree;
+
+    @Setup
+    public void setup() {
+        tree = JsonUtils.parse(JsonUtils.toJson(Order.sample(items)), Map.class);
+    }
+
+    /**
+     * 修改前的读取路径
+     */
+    @Benchmark
+    public Order reserialize() {
+        return JsonUtils.parse(JsonUtils.toJson(tree), Order.class);
+    }
+
+    /**
+     * {@link RedisClient.Jackson2JsonRedisSerializer#deserialize(Object, Class)} 当前的读取路径
+     */
+    @Benchmark
+    public Order convertValue() {
+        return RedisClient.Jackson2JsonRedisSerializer.deserialize(tree, Order.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonConvertBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
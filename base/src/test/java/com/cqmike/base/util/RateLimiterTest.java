@@ -0,0 +1,94 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @program: common
+ * @description: 三种限流算法的脚本行为, 以及本地预检在超过全局限制时不访问 redis
+ * @author: chen qi
+ * @create: 2020-12-29 14:20
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RateLimiterTest extends RedisTestSupport {
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new RateLimiter(redisClient);
+    }
+
+    @Test
+    void fixedWindowRejectsOverLimit() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(acquire("fixed", RateLimiter.Strategy.FIXED_WINDOW, 5, 10000, 1));
+        }
+        assertFalse(acquire("fixed", RateLimiter.Strategy.FIXED_WINDOW, 5, 10000, 1));
+        assertTrue(redisClient.ttl("fixed") > 0);
+    }
+
+    @Test
+    void slidingLogAllowsAgainAfterWindow() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(acquire("sliding", RateLimiter.Strategy.SLIDING_LOG, 3, 300, 1));
+        }
+        assertFalse(acquire("sliding", RateLimiter.Strategy.SLIDING_LOG, 3, 300, 1));
+        Thread.sleep(400);
+        assertTrue(acquire("sliding", RateLimiter.Strategy.SLIDING_LOG, 3, 300, 1));
+    }
+
+    @Test
+    void slidingLogCountsPermits() {
+        assertTrue(acquire("permits", RateLimiter.Strategy.SLIDING_LOG, 3, 10000, 2));
+        // 2 + 2 > 3, 拒绝的请求不占用许可
+        assertFalse(acquire("permits", RateLimiter.Strategy.SLIDING_LOG, 3, 10000, 2));
+        assertTrue(acquire("permits", RateLimiter.Strategy.SLIDING_LOG, 3, 10000, 1));
+        assertFalse(acquire("permits", RateLimiter.Strategy.SLIDING_LOG, 3, 10000, 1));
+    }
+
+    @Test
+    void tokenBucketRefillsOverTime() throws InterruptedException {
+        assertTrue(acquire("bucket", RateLimiter.Strategy.TOKEN_BUCKET, 2, 1000, 1));
+        assertTrue(acquire("bucket", RateLimiter.Strategy.TOKEN_BUCKET, 2, 1000, 1));
+        assertFalse(acquire("bucket", RateLimiter.Strategy.TOKEN_BUCKET, 2, 1000, 1));
+        // 600ms 补充约 1.2 个令牌
+        Thread.sleep(600);
+        assertTrue(acquire("bucket", RateLimiter.Strategy.TOKEN_BUCKET, 2, 1000, 1));
+        assertFalse(acquire("bucket", RateLimiter.Strategy.TOKEN_BUCKET, 2, 1000, 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void localPreCheckRejectsWithoutRedis() {
+        RedisClient client = mock(RedisClient.class);
+        when(client.script(anyString(), eq(Long.class))).thenReturn(new DefaultRedisScript<>("return 1", Long.class));
+        when(client.eval(any(RedisScript.class), anyList(), anyList())).thenReturn(RedisLockUtil.SUCCESS);
+        RateLimiter limiter = new RateLimiter(client);
+        assertTrue(limiter.tryAcquire("local", RateLimiter.Strategy.FIXED_WINDOW, 2, 1, TimeUnit.MINUTES));
+        assertTrue(limiter.tryAcquire("local", RateLimiter.Strategy.FIXED_WINDOW, 2, 1, TimeUnit.MINUTES));
+        assertFalse(limiter.tryAcquire("local", RateLimiter.Strategy.FIXED_WINDOW, 2, 1, TimeUnit.MINUTES));
+        verify(client, times(2)).eval(any(RedisScript.class), anyList(), anyList());
+        verify(client, times(2)).script(anyString(), eq(Long.class));
+    }
+
+    private boolean acquire(String key, RateLimiter.Strategy strategy, long limit, long windowMillis, int permits) {
+        return rateLimiter.tryAcquire(key, strategy, limit, windowMillis, TimeUnit.MILLISECONDS, permits, false);
+    }
+}
@@ -0,0 +1,109 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.exception.RedisException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: 管道结果按入队顺序回填与类型转换, 以及写入key的失效回调
+ * @author: chen qi
+ * @create: 2020-12-29 11:00
+ **/
+class RedisBatchTest {
+
+    @Test
+    void completesResponsesInOrder() {
+        RedisBatch batch = new RedisBatch();
+        RedisBatch.Response<Boolean> set = batch.set("a", 1);
+        RedisBatch.Response<Integer> get = batch.get("a", Integer.class);
+        RedisBatch.Response<Long> incr = batch.incr("n", 2);
+        RedisBatch.Response<Long> del = batch.del("a", "b");
+        RedisBatch.Response<Boolean> expire = batch.expire("n", 10);
+        RedisBatch.Response<String> missing = batch.hget("h", "f", String.class);
+
+        List<Object> converted = batch.complete(Arrays.asList(Boolean.TRUE, 1, 2L, 1L, Boolean.FALSE, null));
+
+        assertEquals(Arrays.asList(true, 1, 2L, 1L, false, null), converted);
+        assertTrue(set.get());
+        assertEquals(Integer.valueOf(1), get.get());
+        assertEquals(Long.valueOf(2), incr.get());
+        assertEquals(Long.valueOf(1), del.get());
+        assertFalse(expire.get());
+        assertTrue(missing.isDone());
+        assertNull(missing.get());
+    }
+
+    @Test
+    void convertsDecodedValues() {
+        RedisBatch batch = new RedisBatch();
+        RedisBatch.Response<Boolean> hset = batch.hset("h", "f", "v");
+        RedisBatch.Response<Long> sadd = batch.sadd("s", "x", "y");
+        RedisBatch.Response<Set<Long>> members = batch.smembers("s", Long.class);
+        RedisBatch.Response<List<Long>> range = batch.lrange("l", 0, -1, Long.class);
+        Map<String, Object> decoded = new LinkedHashMap<>();
+        decoded.put("count", 3);
+        RedisBatch.Response<Map<String, Long>> typed = batch.get("m", new TypeReference<Map<String, Long>>() {
+        });
+
+        batch.complete(Arrays.asList(1L, 2L, new HashSet<>(Arrays.asList(1, 2)), new ArrayList<>(Arrays.asList(3, 4)), decoded));
+
+        // 数字结果与布尔结果之间的转换
+        assertTrue(hset.get());
+        assertEquals(Long.valueOf(2), sadd.get());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), members.get());
+        assertEquals(Arrays.asList(3L, 4L), range.get());
+        assertEquals(Long.valueOf(3), typed.get().get("count"));
+    }
+
+    @Test
+    void responseBeforeExecuteThrows() {
+        RedisBatch batch = new RedisBatch();
+        RedisBatch.Response<Boolean> set = batch.set("a", 1);
+        assertFalse(set.isDone());
+        assertThrows(RedisException.class, set::get);
+    }
+
+    @Test
+    void resultSizeMismatchThrows() {
+        RedisBatch batch = new RedisBatch();
+        batch.set("a", 1);
+        batch.set("b", 2);
+        assertThrows(RedisException.class, () -> batch.complete(Collections.singletonList(Boolean.TRUE)));
+        assertThrows(RedisException.class, () -> batch.complete(null));
+    }
+
+    @Test
+    void reportsWrittenKeysAndFields() {
+        RedisBatch batch = new RedisBatch();
+        batch.get("read", String.class);
+        batch.set("a", 1);
+        batch.hset("h1", "f1", "v");
+        batch.hdel("h2", "f2", "f3");
+        batch.hset("h3", "f4", "v");
+        batch.del("h3");
+
+        List<String> keys = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        batch.written(keys::add, (key, field) -> fields.add(key + ":" + field));
+
+        assertEquals(Arrays.asList("a", "h3"), keys);
+        // 整个key已失效的 h3 不再单独回调字段
+        assertEquals(Arrays.asList("h1:f1", "h2:f2", "h2:f3"), fields);
+    }
+}
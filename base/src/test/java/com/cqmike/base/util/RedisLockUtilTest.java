@@ -0,0 +1,111 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: SET NX 锁的获取、释放、等待超时、毫秒租期过期, 以及释放通知唤醒等待线程
+ * @author: chen qi
+ * @create: 2020-12-29 15:00
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RedisLockUtilTest extends RedisTestSupport {
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        RedisLockUtil.setNotifier(null);
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    @Test
+    void acquireAndRelease() {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:a", "v1", 30));
+        assertFalse(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:a", "v2", 30));
+        // 只有持有者可以释放
+        assertFalse(RedisLockUtil.releaseDistributedLock(redisClient, "LOCK:a", "v2"));
+        assertTrue(RedisLockUtil.releaseDistributedLock(redisClient, "LOCK:a", "v1"));
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:a", "v2", 30));
+    }
+
+    @Test
+    void waitTimesOut() throws InterruptedException {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:b", "v1", 30));
+        long start = System.currentTimeMillis();
+        assertFalse(RedisLockUtil.lockWithWaitTime(redisClient, "LOCK:b", "v2", 30, 300));
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+
+    @Test
+    void expandOnlyByOwner() {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:c", "v1", 1));
+        assertFalse(RedisLockUtil.expandLockTime(redisClient, "LOCK:c", "v2", 30));
+        assertTrue(RedisLockUtil.expandLockTime(redisClient, "LOCK:c", "v1", 30));
+        assertTrue(redisClient.ttl("LOCK:c") > 1);
+    }
+
+    @Test
+    void millisecondLeaseExpiresWithoutRenewal() throws InterruptedException {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:e", "v1", 200, TimeUnit.MILLISECONDS));
+        assertFalse(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:e", "v2", 30));
+        Thread.sleep(400);
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:e", "v2", 30));
+        // 过期后旧持有者不能释放或续期新持有者的锁
+        assertFalse(RedisLockUtil.releaseDistributedLock(redisClient, "LOCK:e", "v1"));
+        assertFalse(RedisLockUtil.expandLockTime(redisClient, "LOCK:e", "v1", 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void subMillisecondLeaseRoundsUp() {
+        assertEquals(1, RedisLockUtil.toLeaseMillis(500, TimeUnit.MICROSECONDS));
+        assertEquals(1500, RedisLockUtil.toLeaseMillis(1500, TimeUnit.MILLISECONDS));
+        assertEquals(2000, RedisLockUtil.toLeaseMillis(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void releaseNotificationWakesWaiter() throws Exception {
+        RedisLockNotifier notifier = new RedisLockNotifier(RedisLockNotifier.DEFAULT_CHANNEL_PREFIX);
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener(notifier, new PatternTopic(notifier.getPattern()));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        RedisLockUtil.setNotifier(notifier);
+        // 等待订阅生效
+        Thread.sleep(500);
+
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:d", "v1", 30));
+        Semaphore released = notifier.register("LOCK:d");
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return RedisLockUtil.lockWithWaitTime(redisClient, "LOCK:d", "v2", 30, 10000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertFalse(waiter.isDone());
+        assertTrue(RedisLockUtil.releaseDistributedLock(redisClient, "LOCK:d", "v1"));
+
+        // 释放脚本发布的通知到达本节点, 等待的线程被唤醒后获取到锁
+        assertTrue(released.tryAcquire(2, TimeUnit.SECONDS));
+        notifier.unregister("LOCK:d", released);
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertFalse(RedisLockUtil.tryGetDistributedLock(redisClient, "LOCK:d", "v1", 30));
+    }
+}
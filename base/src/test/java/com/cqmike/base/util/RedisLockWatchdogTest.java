@@ -0,0 +1,69 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: 看门狗在租期内续期, 取消后不再续期, 锁丢失后移除续期
+ * @author: chen qi
+ * @create: 2020-12-29 15:30
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RedisLockWatchdogTest extends RedisTestSupport {
+
+    private RedisLockWatchdog watchdog;
+
+    @BeforeEach
+    void setUp() {
+        watchdog = new RedisLockWatchdog(redisClient, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watchdog.shutdown();
+    }
+
+    @Test
+    void renewsBeyondLease() throws InterruptedException {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "WATCH:a", "v1", 300, TimeUnit.MILLISECONDS));
+        RedisLockWatchdog.Lease lease = watchdog.watch("WATCH:a", "v1", 300);
+        Thread.sleep(1000);
+        assertTrue(lease.isActive());
+        assertFalse(RedisLockUtil.tryGetDistributedLock(redisClient, "WATCH:a", "v2", 30));
+    }
+
+    @Test
+    void cancelStopsRenewal() throws InterruptedException {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "WATCH:b", "v1", 300, TimeUnit.MILLISECONDS));
+        RedisLockWatchdog.Lease lease = watchdog.watch("WATCH:b", "v1", 300);
+        lease.cancel();
+        assertFalse(lease.isActive());
+        assertEquals(0, watchdog.size());
+        Thread.sleep(500);
+        assertFalse(redisClient.hasKey("WATCH:b"));
+    }
+
+    @Test
+    void lostLockRemovesLease() throws InterruptedException {
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "WATCH:c", "v1", 300, TimeUnit.MILLISECONDS));
+        RedisLockWatchdog.Lease lease = watchdog.watch("WATCH:c", "v1", 300);
+        assertEquals(1, watchdog.size());
+        // 锁过期后被其他持有者获取, 续期脚本返回 0
+        redisClient.del("WATCH:c");
+        assertTrue(RedisLockUtil.tryGetDistributedLock(redisClient, "WATCH:c", "v2", 30));
+        Thread.sleep(500);
+        assertFalse(lease.isActive());
+        assertEquals(0, watchdog.size());
+        // 其他持有者的锁不受影响
+        assertTrue(redisClient.ttl("WATCH:c") > 20);
+    }
+}
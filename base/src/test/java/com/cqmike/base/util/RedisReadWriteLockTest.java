@@ -0,0 +1,95 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: 读锁共享、写锁独占, 以及写锁降级为读锁
+ * @author: chen qi
+ * @create: 2020-12-29 16:30
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RedisReadWriteLockTest extends RedisTestSupport {
+
+    private RedisLockWatchdog watchdog;
+    private RedisReadWriteLock rwLock;
+
+    @BeforeEach
+    void setUp() {
+        watchdog = new RedisLockWatchdog(redisClient, 50);
+        rwLock = new RedisReadWriteLock(redisClient, watchdog, "RW:a", 30000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watchdog.shutdown();
+    }
+
+    @Test
+    void readersShareAndBlockWriter() throws Exception {
+        assertTrue(rwLock.readLock().tryLock());
+        assertTrue(otherThreadTryLock(rwLock.readLock()));
+        assertFalse(otherThreadTryLock(rwLock.writeLock()));
+        // 持有读锁的线程也不能升级为写锁
+        assertFalse(rwLock.writeLock().tryLock());
+    }
+
+    @Test
+    void writerIsExclusive() throws Exception {
+        assertTrue(rwLock.writeLock().tryLock());
+        assertTrue(rwLock.writeLock().tryLock());
+        assertFalse(otherThreadTryLock(rwLock.readLock()));
+        assertFalse(otherThreadTryLock(rwLock.writeLock()));
+
+        rwLock.writeLock().unlock();
+        assertFalse(otherThreadTryLock(rwLock.readLock()));
+        rwLock.writeLock().unlock();
+        assertFalse(redisClient.hasKey("RW:a"));
+        assertTrue(otherThreadTryLock(rwLock.writeLock()));
+    }
+
+    @Test
+    void writeDowngradesToRead() throws Exception {
+        assertTrue(rwLock.writeLock().tryLock());
+        assertTrue(rwLock.readLock().tryLock());
+        rwLock.writeLock().unlock();
+
+        // 降级后其他线程可以读, 不能写
+        assertTrue(redisClient.hasKey("RW:a"));
+        assertTrue(otherThreadTryLock(rwLock.readLock()));
+        assertFalse(otherThreadTryLock(rwLock.writeLock()));
+        assertThrows(IllegalMonitorStateException.class, rwLock.writeLock()::unlock);
+        rwLock.readLock().unlock();
+    }
+
+    @Test
+    void writerWaitsForReaderRelease() throws Exception {
+        assertTrue(rwLock.readLock().tryLock());
+        CompletableFuture<Boolean> writer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return rwLock.writeLock().tryLock(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertFalse(writer.isDone());
+        rwLock.readLock().unlock();
+        assertTrue(writer.get(5, TimeUnit.SECONDS));
+    }
+
+    private static boolean otherThreadTryLock(Lock lock) throws Exception {
+        return CompletableFuture.supplyAsync(lock::tryLock).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,90 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: 可重入锁的重入计数、释放、超时, 以及非持有者释放时抛出异常
+ * @author: chen qi
+ * @create: 2020-12-29 16:00
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RedisReentrantLockTest extends RedisTestSupport {
+
+    private RedisLockWatchdog watchdog;
+
+    @BeforeEach
+    void setUp() {
+        watchdog = new RedisLockWatchdog(redisClient, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watchdog.shutdown();
+    }
+
+    @Test
+    void reentersAndReleasesFully() throws Exception {
+        RedisReentrantLock lock = new RedisReentrantLock(redisClient, watchdog, "REENTRANT:a", 30000);
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock());
+        assertEquals(2, lock.getHoldCount());
+        assertEquals(1, watchdog.size());
+        assertFalse(otherThreadTryLock(lock));
+
+        lock.unlock();
+        assertEquals(1, lock.getHoldCount());
+        assertTrue(redisClient.hasKey("REENTRANT:a"));
+        assertFalse(otherThreadTryLock(lock));
+
+        lock.unlock();
+        assertFalse(lock.isHeldByCurrentThread());
+        assertFalse(redisClient.hasKey("REENTRANT:a"));
+        assertEquals(0, watchdog.size());
+        assertTrue(otherThreadTryLock(lock));
+    }
+
+    @Test
+    void unlockWithoutHoldingThrows() throws Exception {
+        RedisReentrantLock lock = new RedisReentrantLock(redisClient, watchdog, "REENTRANT:b", 30000);
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+        // 其他线程持有时同样不能释放
+        assertTrue(CompletableFuture.supplyAsync(lock::tryLock).get(5, TimeUnit.SECONDS));
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+        assertTrue(redisClient.hasKey("REENTRANT:b"));
+    }
+
+    @Test
+    void tryLockTimesOut() throws Exception {
+        RedisReentrantLock lock = new RedisReentrantLock(redisClient, watchdog, "REENTRANT:c", 30000);
+        assertTrue(CompletableFuture.supplyAsync(lock::tryLock).get(5, TimeUnit.SECONDS));
+        long start = System.currentTimeMillis();
+        assertFalse(lock.tryLock(300, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+
+    @Test
+    void expiresWithoutRenewal() throws Exception {
+        RedisReentrantLock lock = new RedisReentrantLock(redisClient, null, "REENTRANT:d", 200);
+        assertTrue(lock.tryLock());
+        assertFalse(otherThreadTryLock(lock));
+        Thread.sleep(400);
+        assertFalse(lock.isHeldByCurrentThread());
+        assertTrue(otherThreadTryLock(lock));
+    }
+
+    private static boolean otherThreadTryLock(RedisReentrantLock lock) throws Exception {
+        return CompletableFuture.supplyAsync(lock::tryLock).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,100 @@
+package com.cqmike.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @program: common
+ * @description: 信号量的许可计数、归还, 以及不续期时许可到期自动归还
+ * @author: chen qi
+ * @create: 2020-12-29 16:50
+ **/
+@Testcontainers(disabledWithoutDocker = true)
+class RedisSemaphoreTest extends RedisTestSupport {
+
+    private RedisLockWatchdog watchdog;
+
+    @BeforeEach
+    void setUp() {
+        watchdog = new RedisLockWatchdog(redisClient, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watchdog.shutdown();
+    }
+
+    @Test
+    void countsPermits() {
+        RedisSemaphore semaphore = new RedisSemaphore(redisClient, watchdog, "SEM:a", 3, 30000);
+        assertEquals(3, semaphore.availablePermits());
+        String two = semaphore.tryAcquire(2);
+        assertNotNull(two);
+        assertEquals(1, semaphore.availablePermits());
+        // 许可不足时不占用
+        assertNull(semaphore.tryAcquire(2));
+        assertEquals(1, semaphore.availablePermits());
+        String one = semaphore.tryAcquire(1);
+        assertNotNull(one);
+        assertEquals(0, semaphore.availablePermits());
+
+        assertTrue(semaphore.release(two));
+        assertEquals(2, semaphore.availablePermits());
+        // 重复归还无效
+        assertFalse(semaphore.release(two));
+        assertTrue(semaphore.release(one));
+        assertEquals(3, semaphore.availablePermits());
+        assertEquals(0, watchdog.size());
+    }
+
+    @Test
+    void rejectsInvalidCount() {
+        RedisSemaphore semaphore = new RedisSemaphore(redisClient, watchdog, "SEM:b", 2, 30000);
+        assertThrows(IllegalArgumentException.class, () -> semaphore.tryAcquire(0));
+        assertThrows(IllegalArgumentException.class, () -> semaphore.tryAcquire(3));
+        assertThrows(IllegalArgumentException.class, () -> new RedisSemaphore(redisClient, watchdog, "SEM:b", 0, 30000));
+    }
+
+    @Test
+    void permitsExpireWithoutRenewal() throws InterruptedException {
+        RedisSemaphore semaphore = new RedisSemaphore(redisClient, null, "SEM:c", 2, 200);
+        String permitId = semaphore.tryAcquire(2);
+        assertNotNull(permitId);
+        assertNull(semaphore.tryAcquire(1));
+        Thread.sleep(400);
+        assertEquals(2, semaphore.availablePermits());
+        // 已到期的许可归还失败, 不影响其他持有者
+        assertFalse(semaphore.release(permitId));
+        assertNotNull(semaphore.tryAcquire(2));
+    }
+
+    @Test
+    void renewedPermitsOutliveLease() throws InterruptedException {
+        RedisSemaphore semaphore = new RedisSemaphore(redisClient, watchdog, "SEM:d", 1, 300);
+        String permitId = semaphore.tryAcquire(1);
+        assertNotNull(permitId);
+        Thread.sleep(1000);
+        assertEquals(0, semaphore.availablePermits());
+        assertTrue(semaphore.release(permitId));
+    }
+
+    @Test
+    void acquireTimesOut() throws InterruptedException {
+        RedisSemaphore semaphore = new RedisSemaphore(redisClient, watchdog, "SEM:e", 1, 30000);
+        assertNotNull(semaphore.tryAcquire(1));
+        long start = System.currentTimeMillis();
+        assertNull(semaphore.tryAcquire(1, 300, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 300);
+    }
+}
@@ -0,0 +1,105 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.exception.RedisException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @program: common
+ * @description: 拉取失败后归还处理名额, redis 恢复后继续消费
+ * @author: chen qi
+ * @create: 2020-12-29 10:10
+ **/
+class RedisStreamContainerTest {
+
+    private static final String KEY = "stream";
+    private static final String GROUP = "group";
+    private static final String CONSUMER = "consumer-1";
+
+    @Test
+    void resumesAfterReadFailures() throws InterruptedException {
+        RedisClient redisClient = mock(RedisClient.class);
+        MapRecord<String, String, String> record = StreamRecords.<String, String, String>mapBacked(
+                Collections.singletonMap("field", "value")).withStreamKey(KEY).withId(RecordId.of("1-0"));
+        AtomicInteger reads = new AtomicInteger();
+        when(redisClient.xreadgroup(eq(KEY), eq(GROUP), eq(CONSUMER), anyInt(), anyLong(), eq(String.class)))
+                .thenAnswer(invocation -> {
+                    int n = reads.incrementAndGet();
+                    if (n <= 2) {
+                        throw new RedisException("connection lost");
+                    }
+                    if (n == 3) {
+                        return Collections.singletonList(record);
+                    }
+                    Thread.sleep(10);
+                    return Collections.emptyList();
+                });
+
+        CountDownLatch handled = new CountDownLatch(1);
+        RedisStreamContainer<String> container = new RedisStreamContainer<>(redisClient, KEY, GROUP, CONSUMER,
+                String.class, r -> handled.countDown());
+        // 每次拉取占满全部名额, 名额泄漏时第一次失败后就无法再拉取
+        container.setMaxInFlight(2);
+        container.setBatchSize(2);
+        container.setWorkers(1);
+        container.setBlockMillis(50);
+        container.setClaimIntervalMillis(TimeUnit.HOURS.toMillis(1));
+        container.start();
+        try {
+            assertTrue(handled.await(10, TimeUnit.SECONDS));
+        } finally {
+            container.stop();
+        }
+        verify(redisClient, timeout(1000)).xack(KEY, GROUP, "1-0");
+    }
+
+    @Test
+    void resumesAfterClaimFailure() throws InterruptedException {
+        RedisClient redisClient = mock(RedisClient.class);
+        MapRecord<String, String, String> record = StreamRecords.<String, String, String>mapBacked(
+                Collections.singletonMap("field", "value")).withStreamKey(KEY).withId(RecordId.of("2-0"));
+        when(redisClient.xclaim(eq(KEY), eq(GROUP), eq(CONSUMER), anyLong(), anyInt(), anyLong(), eq(KEY + ":dlq"),
+                eq(String.class))).thenThrow(new RedisException("connection lost"));
+        AtomicInteger reads = new AtomicInteger();
+        when(redisClient.xreadgroup(eq(KEY), eq(GROUP), eq(CONSUMER), anyInt(), anyLong(), eq(String.class)))
+                .thenAnswer(invocation -> {
+                    if (reads.incrementAndGet() == 1) {
+                        return Collections.singletonList(record);
+                    }
+                    Thread.sleep(10);
+                    return Collections.emptyList();
+                });
+
+        CountDownLatch handled = new CountDownLatch(1);
+        RedisStreamContainer<String> container = new RedisStreamContainer<>(redisClient, KEY, GROUP, CONSUMER,
+                String.class, r -> handled.countDown());
+        container.setMaxInFlight(2);
+        container.setBatchSize(2);
+        container.setWorkers(1);
+        container.setBlockMillis(50);
+        // 第一轮接管失败, 之后按间隔不再接管
+        container.setClaimIntervalMillis(TimeUnit.HOURS.toMillis(1));
+        container.start();
+        try {
+            assertTrue(handled.await(10, TimeUnit.SECONDS));
+        } finally {
+            container.stop();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cqmike.base.util;
+
+import com.cqmike.base.config.RedisClientProperties;
+import com.cqmike.base.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * @program: common
+ * @description: 需要真实 redis 的测试基类, 所有测试类共用一个 redis 容器 (JVM 退出时由 testcontainers 清理), 每个测试前清空数据
+ * <p>
+ * 子类需要标注 {@code @Testcontainers(disabledWithoutDocker = true)}, 没有 docker 时跳过
+ * @author: chen qi
+ * @create: 2020-12-29 14:00
+ **/
+abstract class RedisTestSupport {
+
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:5.0.10-alpine"))
+            .withExposedPorts(6379);
+
+    static LettuceConnectionFactory connectionFactory;
+    static RedisTemplate<String, Object> redisTemplate;
+    static RedisClient redisClient;
+
+    @BeforeAll
+    static void connect() {
+        if (!REDIS.isRunning()) {
+            REDIS.start();
+        }
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        // 与 RedisConfig#redisTemplate 相同的序列化方式
+        RedisSerializer<Object> valueSerializer = new RedisConfig().redisValueSerializer(new RedisClientProperties());
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
+        redisTemplate.afterPropertiesSet();
+        redisClient = new RedisClient(redisTemplate);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flushAll() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+}